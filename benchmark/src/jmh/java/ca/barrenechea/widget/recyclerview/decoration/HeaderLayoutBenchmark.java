@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the header layout of one frame for various numbers of visible children and section
+ * densities. Each invocation lays out the next frame of a simulated scroll.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HeaderLayoutBenchmark {
+  private static final int FRAME_COUNT = 64;
+  private static final int CHILD_HEIGHT = 48;
+  private static final int HEADER_HEIGHT = 32;
+  private static final int SUB_HEADER_HEIGHT = 24;
+
+  @Param({"10", "30", "60", "120"})
+  public int visibleChildren;
+
+  // items per header section, sub-header sections hold a quarter of them
+  @Param({"1", "4", "20", "1000"})
+  public int sectionSize;
+
+  private final ChildSnapshot[] stickyFrames = new ChildSnapshot[FRAME_COUNT];
+  private final ChildSnapshot[] doubleFrames = new ChildSnapshot[FRAME_COUNT];
+  private final HeaderLayoutEngine engine = new HeaderLayoutEngine();
+  private final HeaderLayoutEngine.HeaderHeights heights = new HeaderLayoutEngine.HeaderHeights() {
+    @Override
+    public int getHeaderHeight(int position) {
+      return HEADER_HEIGHT;
+    }
+
+    @Override
+    public int getSubHeaderHeight(int position) {
+      return SUB_HEADER_HEIGHT;
+    }
+  };
+
+  private int frame;
+
+  @Setup
+  public void setUp() {
+    for (int i = 0; i < FRAME_COUNT; i++) {
+      // scroll by a third of a child per frame
+      final int scrolled = i * CHILD_HEIGHT / 3;
+      stickyFrames[i] = createFrame(scrolled / CHILD_HEIGHT, -(scrolled % CHILD_HEIGHT), false);
+      doubleFrames[i] = createFrame(scrolled / CHILD_HEIGHT, -(scrolled % CHILD_HEIGHT), true);
+    }
+  }
+
+  @Benchmark
+  public int stickyFrame() {
+    final ChildSnapshot children = stickyFrames[frame++ & (FRAME_COUNT - 1)];
+    children.link();
+    engine.layoutSticky(children, heights);
+    return engine.drawCount;
+  }
+
+  @Benchmark
+  public int doubleFrame() {
+    final ChildSnapshot children = doubleFrames[frame++ & (FRAME_COUNT - 1)];
+    children.link();
+    engine.layoutDouble(children, heights, false, 0);
+    return engine.drawCount;
+  }
+
+  private ChildSnapshot createFrame(int firstPosition, int firstTop, boolean subHeaders) {
+    final int subSectionSize = Math.max(1, sectionSize / 4);
+    final ChildSnapshot children = new ChildSnapshot();
+    children.reset(visibleChildren);
+
+    int top = firstTop;
+    for (int i = 0; i < visibleChildren; i++) {
+      final int position = firstPosition + i;
+      final boolean headerStart = position % sectionSize == 0;
+      final boolean subHeaderStart = headerStart || position % subSectionSize == 0;
+
+      int height = CHILD_HEIGHT;
+      if (headerStart) {
+        height += HEADER_HEIGHT;
+      }
+      if (subHeaders && subHeaderStart) {
+        height += SUB_HEADER_HEIGHT;
+      }
+
+      children.positions[i] = position;
+      children.lefts[i] = 0;
+      children.tops[i] = top;
+      children.heights[i] = height;
+      children.headerIds[i] = position / sectionSize;
+      children.subHeaderIds[i] = position / subSectionSize;
+      children.headerStarts[i] = headerStart;
+      children.subHeaderStarts[i] = subHeaderStart;
+      children.previousHeaderIds[i] = (position - 1) / sectionSize;
+      children.previousSubHeaderIds[i] = (position - 1) / subSectionSize;
+      top += height;
+    }
+    return children;
+  }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simulates flings over synthetic lists and runs the per-frame work of the decorations which
+ * doesn't depend on the Android framework: indexing the header ids of the children, and laying
+ * out their headers. Each invocation is one frame.
+ * <p>
+ * Calls to the adapter's header id methods and header view lookups are counted, and an iteration
+ * fails when their average per frame exceeds the configured budget, e.g.
+ * {@code -p idCallBudget=2 -p headerLookupBudget=60}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ScrollSimulationBenchmark {
+  private static final int CHILD_HEIGHT = 48;
+  private static final int HEADER_HEIGHT = 32;
+  private static final int SUB_HEADER_HEIGHT = 24;
+  private static final int VISIBLE_CHILDREN = 20;
+  private static final float FLING_VELOCITY = 400f;
+  private static final float FLING_FRICTION = 0.985f;
+
+  @Param({"sticky", "double"})
+  public String decoration;
+
+  @Param({"1000", "100000", "1000000"})
+  public int itemCount;
+
+  // items per header section, sub-header sections hold a quarter of them
+  @Param({"1", "10", "100"})
+  public int sectionSize;
+
+  // average adapter header id calls allowed per frame
+  @Param({"8"})
+  public int idCallBudget;
+
+  // average header view lookups allowed per frame
+  @Param({"100"})
+  public int headerLookupBudget;
+
+  private SectionIndex headerSections;
+  private SectionIndex subHeaderSections;
+  private final ChildSnapshot children = new ChildSnapshot();
+  private final HeaderLayoutEngine engine = new HeaderLayoutEngine();
+
+  private long idCalls;
+  private long headerLookups;
+  private long frames;
+
+  private final HeaderLayoutEngine.HeaderHeights heights = new HeaderLayoutEngine.HeaderHeights() {
+    @Override
+    public int getHeaderHeight(int position) {
+      headerLookups++;
+      return HEADER_HEIGHT;
+    }
+
+    @Override
+    public int getSubHeaderHeight(int position) {
+      headerLookups++;
+      return SUB_HEADER_HEIGHT;
+    }
+  };
+
+  private boolean isDouble;
+  private long maxOffset;
+  private long offset;
+  private float velocity;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    final int subSectionSize = Math.max(1, sectionSize / 4);
+    headerSections = new SectionIndex(new SectionIndex.IdSource() {
+      @Override
+      public long getId(int position) {
+        idCalls++;
+        return position / sectionSize;
+      }
+    });
+    subHeaderSections = new SectionIndex(new SectionIndex.IdSource() {
+      @Override
+      public long getId(int position) {
+        idCalls++;
+        return position / subSectionSize;
+      }
+    });
+    headerSections.setItemCount(itemCount);
+    subHeaderSections.setItemCount(itemCount);
+
+    isDouble = "double".equals(decoration);
+    maxOffset = Math.max(0, (long) (itemCount - VISIBLE_CHILDREN) * CHILD_HEIGHT);
+    offset = 0;
+    velocity = FLING_VELOCITY;
+  }
+
+  @Setup(Level.Iteration)
+  public void resetCounters() {
+    idCalls = 0;
+    headerLookups = 0;
+    frames = 0;
+  }
+
+  @TearDown(Level.Iteration)
+  public void checkBudgets() {
+    final double idCallsPerFrame = (double) idCalls / frames;
+    final double headerLookupsPerFrame = (double) headerLookups / frames;
+
+    if (idCallsPerFrame > idCallBudget) {
+      throw new IllegalStateException("Id calls per frame " + idCallsPerFrame + " exceed the budget of " + idCallBudget);
+    }
+    if (headerLookupsPerFrame > headerLookupBudget) {
+      throw new IllegalStateException("Header lookups per frame " + headerLookupsPerFrame + " exceed the budget of " + headerLookupBudget);
+    }
+  }
+
+  @Benchmark
+  public int frame() {
+    scroll();
+
+    final int firstPosition = (int) (offset / CHILD_HEIGHT);
+    final int count = Math.min(VISIBLE_CHILDREN + 1, itemCount - firstPosition);
+    int top = -(int) (offset % CHILD_HEIGHT);
+
+    children.reset(count);
+    for (int i = 0; i < count; i++) {
+      final int position = firstPosition + i;
+      children.positions[i] = position;
+      children.lefts[i] = 0;
+      children.tops[i] = top;
+      children.heights[i] = CHILD_HEIGHT;
+      children.headerIds[i] = headerSections.getId(position);
+      if (isDouble) {
+        children.subHeaderIds[i] = subHeaderSections.getId(position);
+        children.headerStarts[i] = headerSections.isSectionStart(position);
+        children.subHeaderStarts[i] = subHeaderSections.isSectionStart(position);
+        if (position > 0) {
+          children.previousHeaderIds[i] = headerSections.getId(position - 1);
+          children.previousSubHeaderIds[i] = subHeaderSections.getId(position - 1);
+        }
+      }
+      top += CHILD_HEIGHT;
+    }
+    children.link();
+
+    if (isDouble) {
+      engine.layoutDouble(children, heights, false, 0);
+    } else {
+      engine.layoutSticky(children, heights);
+    }
+
+    frames++;
+    return engine.drawCount;
+  }
+
+  /**
+   * Advances a fling by one frame, flinging again in the other direction once it settles or
+   * reaches an end of the list.
+   */
+  private void scroll() {
+    offset += (long) velocity;
+    velocity *= FLING_FRICTION;
+
+    if (offset <= 0 || offset >= maxOffset || Math.abs(velocity) < 1f) {
+      offset = Math.max(0, Math.min(maxOffset, offset));
+      final boolean down = offset == 0 || (offset < maxOffset && velocity < 0);
+      velocity = down ? FLING_VELOCITY : -FLING_VELOCITY;
+    }
+  }
+}
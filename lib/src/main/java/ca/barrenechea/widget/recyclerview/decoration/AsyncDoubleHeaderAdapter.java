@@ -0,0 +1,36 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import androidx.annotation.Px;
+
+/**
+ * An optional interface for a {@link DoubleHeaderAdapter} whose header and subheader view holders
+ * can both be created on a background thread.
+ *
+ * @see AsyncHeaderAdapter
+ */
+public interface AsyncDoubleHeaderAdapter extends AsyncHeaderAdapter {
+  /**
+   * Returns the height to reserve for a subheader which is still being created, used until a
+   * subheader has been measured.
+   *
+   * @return the estimated subheader height in pixels
+   */
+  @Px
+  int getEstimatedSubHeaderHeight();
+}
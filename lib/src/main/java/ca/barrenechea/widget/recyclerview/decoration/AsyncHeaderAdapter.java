@@ -0,0 +1,39 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import androidx.annotation.Px;
+
+/**
+ * An optional interface for a {@link StickyHeaderAdapter} or a {@link DoubleHeaderAdapter} whose
+ * header view holders can be created on a background thread.
+ * <p>
+ * Once the decoration is given an executor with {@code setHeaderExecutor}, the adapter's header
+ * creation method is called on that executor and the created holder is bound, measured and drawn
+ * on the main thread. Adapters not implementing this interface keep creating headers on the main
+ * thread.
+ */
+public interface AsyncHeaderAdapter {
+  /**
+   * Returns the height to reserve for a header which is still being created, used until a header
+   * has been measured.
+   *
+   * @return the estimated header height in pixels
+   */
+  @Px
+  int getEstimatedHeaderHeight();
+}
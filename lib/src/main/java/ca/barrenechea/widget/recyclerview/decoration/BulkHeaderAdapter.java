@@ -0,0 +1,43 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import androidx.annotation.NonNull;
+
+/**
+ * An optional interface for a {@link StickyHeaderAdapter}, a {@link DoubleHeaderAdapter} or a
+ * {@link TextHeaderAdapter} which can report the header ids of a range of positions at once.
+ * <p>
+ * When the adapter implements it, the decorations ask for the header ids of consecutive
+ * positions in batches instead of calling {@code getHeaderId(int)} for every position, so the
+ * ids can be copied straight from the adapter's backing data. Not used when the adapter
+ * implements {@link SectionedHeaderAdapter}.
+ */
+public interface BulkHeaderAdapter {
+  /**
+   * Writes the header ids of the items from {@code start} to {@code start + count - 1} to the
+   * first {@code count} elements of the given array.
+   *
+   * @param start
+   *   the first item position
+   * @param count
+   *   the number of positions, never greater than the length of the array
+   * @param ids
+   *   the array receiving the header ids
+   */
+  void getHeaderIds(int start, int count, @NonNull long[] ids);
+}
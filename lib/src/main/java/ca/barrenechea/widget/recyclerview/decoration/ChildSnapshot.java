@@ -0,0 +1,129 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+/**
+ * The children of a list as seen by a decoration during one frame, stored in reusable primitive
+ * arrays indexed by layout position. This is the input of the {@link HeaderLayoutEngine} and
+ * doesn't depend on the Android framework.
+ * <p>
+ * After the children are gathered, {@link #link()} computes for every child the next child with
+ * a different header or sub-header id in a single backward pass, so finding the header pushing a
+ * sticky header out of the screen no longer scans the remaining children.
+ */
+final class ChildSnapshot {
+  static final int NONE = -1;
+  static final int NO_POSITION = -1;
+
+  int count;
+  // adapter positions, or NO_POSITION for children being removed
+  int[] positions = new int[0];
+  int[] lefts = new int[0];
+  int[] tops = new int[0];
+  int[] heights = new int[0];
+  long[] headerIds = new long[0];
+  long[] subHeaderIds = new long[0];
+  // whether the child is the first item of its header or sub-header section
+  boolean[] headerStarts = new boolean[0];
+  boolean[] subHeaderStarts = new boolean[0];
+  // the ids of the item before the child's one
+  long[] previousHeaderIds = new long[0];
+  long[] previousSubHeaderIds = new long[0];
+
+  // index of the next child with an adapter position
+  private int[] nextValid = new int[0];
+  // index of the next child with an adapter position and a different header id
+  private int[] nextHeaderChange = new int[0];
+  // index of the next child with an adapter position and a different sub-header id
+  private int[] nextSubHeaderChange = new int[0];
+
+  /**
+   * Prepares the snapshot for the given number of children.
+   */
+  void reset(int count) {
+    this.count = count;
+    if (positions.length < count) {
+      final int capacity = Math.max(count, positions.length * 2);
+      positions = new int[capacity];
+      lefts = new int[capacity];
+      tops = new int[capacity];
+      heights = new int[capacity];
+      headerIds = new long[capacity];
+      subHeaderIds = new long[capacity];
+      headerStarts = new boolean[capacity];
+      subHeaderStarts = new boolean[capacity];
+      previousHeaderIds = new long[capacity];
+      previousSubHeaderIds = new long[capacity];
+      nextValid = new int[capacity];
+      nextHeaderChange = new int[capacity];
+      nextSubHeaderChange = new int[capacity];
+    }
+  }
+
+  /**
+   * @return true if the child at the given index has an adapter position
+   */
+  boolean isValid(int index) {
+    return positions[index] != NO_POSITION;
+  }
+
+  /**
+   * Links every child to the next ones with a different header and sub-header id. Must be called
+   * once all children were gathered.
+   */
+  void link() {
+    int next = NONE;
+    for (int i = count - 1; i >= 0; i--) {
+      nextValid[i] = next;
+      if (next == NONE) {
+        nextHeaderChange[i] = NONE;
+        nextSubHeaderChange[i] = NONE;
+      } else {
+        nextHeaderChange[i] = headerIds[next] != headerIds[i] ? next : nextHeaderChange[next];
+        nextSubHeaderChange[i] = subHeaderIds[next] != subHeaderIds[i] ? next : nextSubHeaderChange[next];
+      }
+
+      if (isValid(i)) {
+        next = i;
+      }
+    }
+  }
+
+  /**
+   * @return the index of the first child after the given one with an adapter position and a
+   * header id other than the given one, or {@link #NONE}
+   */
+  int findHeaderChange(int index, long headerId) {
+    final int next = nextValid[index];
+    if (next == NONE || headerIds[next] != headerId) {
+      return next;
+    }
+    return nextHeaderChange[next];
+  }
+
+  /**
+   * @return the index of the first child after the given one with an adapter position and a
+   * sub-header id other than the given one, or {@link #NONE}
+   */
+  int findSubHeaderChange(int index, long subHeaderId) {
+    final int next = nextValid[index];
+    if (next == NONE || subHeaderIds[next] != subHeaderId) {
+      return next;
+    }
+    return nextSubHeaderChange[next];
+  }
+}
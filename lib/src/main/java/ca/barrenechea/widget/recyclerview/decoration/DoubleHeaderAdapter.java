@@ -39,7 +39,8 @@ interface DoubleHeaderPositionListener {
   }
 
   /**
-   * Returns the header id for the item at the given position.
+   * Returns the header id for the item at the given position. Not called when the adapter
+   * implements {@link SectionedHeaderAdapter}.
    *
    * @param position
    *   the item position
@@ -49,7 +50,8 @@ interface DoubleHeaderPositionListener {
   long getHeaderId(int position);
 
   /**
-   * Returns the sub-header id for the item at the given position.
+   * Returns the sub-header id for the item at the given position. Not called when the adapter
+   * implements {@link SectionedDoubleHeaderAdapter}.
    *
    * @param position
    *   the item position
@@ -59,7 +61,8 @@ interface DoubleHeaderPositionListener {
   long getSubHeaderId(int position);
 
   /**
-   * Creates a new header ViewHolder.
+   * Creates a new header ViewHolder. Called on a background thread when the adapter implements
+   * {@link AsyncHeaderAdapter} and the decoration was given an executor.
    *
    * @param parent
    *   the header's view parent
@@ -70,7 +73,8 @@ interface DoubleHeaderPositionListener {
   H onCreateHeaderHolder(@NonNull ViewGroup parent);
 
   /**
-   * Creates a new sub-header ViewHolder.
+   * Creates a new sub-header ViewHolder. Called on a background thread when the adapter implements
+   * {@link AsyncDoubleHeaderAdapter} and the decoration was given an executor.
    *
    * @param parent
    *   the sub-header's view parent
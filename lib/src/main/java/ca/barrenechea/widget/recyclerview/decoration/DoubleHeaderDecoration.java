@@ -16,6 +16,7 @@
 
 package ca.barrenechea.widget.recyclerview.decoration;
 
+import android.content.ComponentCallbacks2;
 import android.graphics.Canvas;
 import android.graphics.Rect;
 import android.view.View;
@@ -25,19 +26,88 @@
 import androidx.annotation.Nullable;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * A double sticky header decoration for android's RecyclerView.
  */
 public class DoubleHeaderDecoration extends RecyclerView.ItemDecoration {
+  // the pinned header is shown above the pinned subheader
+  private static final int OVERLAY_SUB_HEADER_SLOT = 0;
+  private static final int OVERLAY_HEADER_SLOT = 1;
+
   private DoubleHeaderAdapter adapter;
-  private Map<Long, RecyclerView.ViewHolder> subHeaderCache;
-  private Map<Long, RecyclerView.ViewHolder> headerCache;
+  private final HeaderController subHeaders;
+  private final HeaderController headers;
   private boolean renderInline;
   private int betweenHeadersMargin = 0;
   private DoubleHeaderAdapter.DoubleHeaderPositionListener positionListener;
+  private HeaderMetrics metrics;
+  private boolean tracing;
+  private HeaderOverlay overlay;
+  private final HeaderPrefetcher prefetcher = new HeaderPrefetcher() {
+    @Override
+    int prefetch(@NonNull RecyclerView parent, int position, int direction, long deadlineNanos) {
+      return prefetchSection(parent, position, direction, deadlineNanos);
+    }
+  };
+  private final HeaderPrewarmer prewarmer = new HeaderPrewarmer() {
+    @Override
+    int prewarm(@NonNull RecyclerView parent, int position) {
+      return prewarmSection(parent, position);
+    }
+  };
+  private final HeaderTrimmer trimmer = new HeaderTrimmer() {
+    @Override
+    void trim() {
+      headers.trim();
+      subHeaders.trim();
+    }
+
+    @Override
+    void release() {
+      prewarmer.cancel();
+      prefetcher.cancel();
+      clearDoubleHeaderCache();
+      stopObservingAdapter();
+    }
+  };
+  private final ChildSnapshot children = new ChildSnapshot();
+  private final HeaderLayoutEngine layout = new HeaderLayoutEngine();
+  private final ViewHeaderHeights headerHeights = new ViewHeaderHeights();
+
+  private final SectionIndex headerSections;
+  private final SectionIndex subHeaderSections;
+  private RecyclerView.Adapter observedAdapter;
+  private final RecyclerView.AdapterDataObserver dataObserver = new RecyclerView.AdapterDataObserver() {
+    @Override
+    public void onChanged() {
+      onDataChanged();
+    }
+
+    @Override
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+      onDataChanged(positionStart, positionStart + itemCount, 0);
+    }
+
+    @Override
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+      // the items may extend the section before the insertion point, and the item which was at
+      // the insertion point may now start a section
+      onDataChanged(Math.max(positionStart - 1, 0), positionStart + 1, itemCount);
+    }
+
+    @Override
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+      onDataChanged(positionStart, positionStart + itemCount, -itemCount);
+    }
+
+    @Override
+    public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+      onDataChanged(Math.min(fromPosition, toPosition), Math.max(fromPosition, toPosition) + itemCount, 0);
+    }
+  };
 
   /**
    * @param adapter
@@ -54,15 +124,312 @@ public DoubleHeaderDecoration(@NonNull DoubleHeaderAdapter adapter) {
   public DoubleHeaderDecoration(@NonNull DoubleHeaderAdapter adapter, boolean renderInline) {
     this.adapter = adapter;
 
-    this.subHeaderCache = new HashMap<>();
-    this.headerCache = new HashMap<>();
+    this.subHeaders = createSubHeaderController(adapter);
+    this.headers = createHeaderController(adapter);
     this.renderInline = renderInline;
+
+    this.headerSections = createHeaderSectionIndex(adapter);
+    this.subHeaderSections = createSubHeaderSectionIndex(adapter);
+  }
+
+  @NonNull
+  private static HeaderController createHeaderController(@NonNull final DoubleHeaderAdapter adapter) {
+    final VersionedHeaderAdapter versioned = adapter instanceof VersionedHeaderAdapter ? (VersionedHeaderAdapter) adapter : null;
+    final AsyncHeaderAdapter async = adapter instanceof AsyncHeaderAdapter ? (AsyncHeaderAdapter) adapter : null;
+    final MultiTypeHeaderAdapter multiType = adapter instanceof MultiTypeHeaderAdapter ? (MultiTypeHeaderAdapter) adapter : null;
+    final PayloadHeaderAdapter payloads = adapter instanceof PayloadHeaderAdapter ? (PayloadHeaderAdapter) adapter : null;
+    final SizedHeaderAdapter sized = adapter instanceof SizedHeaderAdapter ? (SizedHeaderAdapter) adapter : null;
+    return new HeaderController(new HeaderCache(), HeaderController.LEVEL_HEADER) {
+      @NonNull
+      @Override
+      RecyclerView.ViewHolder createHolder(@NonNull ViewGroup parent, int viewType) {
+        return multiType != null ? multiType.onCreateHeaderViewHolder(parent, viewType) : adapter.onCreateHeaderHolder(parent);
+      }
+
+      @Override
+      int getViewType(int position) {
+        return multiType != null ? multiType.getHeaderViewType(position) : DEFAULT_VIEW_TYPE;
+      }
+
+      @Override
+      void bindHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+        //noinspection unchecked
+        adapter.onBindHeaderHolder(holder, position);
+      }
+
+      @Override
+      boolean bindHolder(@NonNull RecyclerView.ViewHolder holder, int position, @NonNull List<Object> payloadList) {
+        if (payloads == null) {
+          return super.bindHolder(holder, position, payloadList);
+        }
+        //noinspection unchecked
+        return payloads.onBindHeaderViewHolder(holder, position, payloadList);
+      }
+
+      @Override
+      boolean hasContentVersions() {
+        return versioned != null;
+      }
+
+      @Override
+      long getContentVersion(int position) {
+        return versioned.getHeaderVersion(position);
+      }
+
+      @Override
+      int getDeclaredHeight(int viewType) {
+        return sized != null ? sized.getHeaderHeight(viewType) : NO_HEIGHT;
+      }
+
+      @Override
+      int getEstimatedHeight() {
+        return async != null ? async.getEstimatedHeaderHeight() : 0;
+      }
+    };
+  }
+
+  @NonNull
+  private static HeaderController createSubHeaderController(@NonNull final DoubleHeaderAdapter adapter) {
+    final VersionedDoubleHeaderAdapter versioned = adapter instanceof VersionedDoubleHeaderAdapter ? (VersionedDoubleHeaderAdapter) adapter : null;
+    final AsyncDoubleHeaderAdapter async = adapter instanceof AsyncDoubleHeaderAdapter ? (AsyncDoubleHeaderAdapter) adapter : null;
+    final MultiTypeDoubleHeaderAdapter multiType = adapter instanceof MultiTypeDoubleHeaderAdapter ? (MultiTypeDoubleHeaderAdapter) adapter : null;
+    final PayloadDoubleHeaderAdapter payloads = adapter instanceof PayloadDoubleHeaderAdapter ? (PayloadDoubleHeaderAdapter) adapter : null;
+    final SizedDoubleHeaderAdapter sized = adapter instanceof SizedDoubleHeaderAdapter ? (SizedDoubleHeaderAdapter) adapter : null;
+    return new HeaderController(new HeaderCache(), HeaderController.LEVEL_SUB_HEADER) {
+      @NonNull
+      @Override
+      RecyclerView.ViewHolder createHolder(@NonNull ViewGroup parent, int viewType) {
+        return multiType != null ? multiType.onCreateSubHeaderViewHolder(parent, viewType) : adapter.onCreateSubHeaderHolder(parent);
+      }
+
+      @Override
+      int getViewType(int position) {
+        return multiType != null ? multiType.getSubHeaderViewType(position) : DEFAULT_VIEW_TYPE;
+      }
+
+      @Override
+      void bindHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+        //noinspection unchecked
+        adapter.onBindSubHeaderHolder(holder, position);
+      }
+
+      @Override
+      boolean bindHolder(@NonNull RecyclerView.ViewHolder holder, int position, @NonNull List<Object> payloadList) {
+        if (payloads == null) {
+          return super.bindHolder(holder, position, payloadList);
+        }
+        //noinspection unchecked
+        return payloads.onBindSubHeaderViewHolder(holder, position, payloadList);
+      }
+
+      @Override
+      boolean hasContentVersions() {
+        return versioned != null;
+      }
+
+      @Override
+      long getContentVersion(int position) {
+        return versioned.getSubHeaderVersion(position);
+      }
+
+      @Override
+      int getDeclaredHeight(int viewType) {
+        return sized != null ? sized.getSubHeaderHeight(viewType) : NO_HEIGHT;
+      }
+
+      @Override
+      int getEstimatedHeight() {
+        return async != null ? async.getEstimatedSubHeaderHeight() : 0;
+      }
+    };
+  }
+
+  @NonNull
+  private static SectionIndex createHeaderSectionIndex(@NonNull final DoubleHeaderAdapter adapter) {
+    return SectionIndex.forHeaders(adapter, new SectionIndex.IdSource() {
+      @Override
+      public long getId(int position) {
+        return adapter.getHeaderId(position);
+      }
+    });
+  }
+
+  @NonNull
+  private static SectionIndex createSubHeaderSectionIndex(@NonNull final DoubleHeaderAdapter adapter) {
+    return SectionIndex.forSubHeaders(adapter, new SectionIndex.IdSource() {
+      @Override
+      public long getId(int position) {
+        return adapter.getSubHeaderId(position);
+      }
+    });
   }
 
   public void setPositionListener(DoubleHeaderAdapter.DoubleHeaderPositionListener positionListener) {
     this.positionListener = positionListener;
   }
 
+  /**
+   * Replaces the header view cache. Headers will be recreated and rebound on list scroll after
+   * this method has been called.
+   *
+   * @param headerCache
+   *   the header cache to use
+   */
+  public void setHeaderCache(@NonNull HeaderCache headerCache) {
+    headers.setCache(headerCache);
+  }
+
+  /**
+   * @return the header view cache
+   */
+  @NonNull
+  public HeaderCache getHeaderCache() {
+    return headers.getCache();
+  }
+
+  /**
+   * Replaces the subheader view cache. Subheaders will be recreated and rebound on list scroll
+   * after this method has been called.
+   *
+   * @param subHeaderCache
+   *   the subheader cache to use
+   */
+  public void setSubHeaderCache(@NonNull HeaderCache subHeaderCache) {
+    subHeaders.setCache(subHeaderCache);
+  }
+
+  /**
+   * @return the subheader view cache
+   */
+  @NonNull
+  public HeaderCache getSubHeaderCache() {
+    return subHeaders.getCache();
+  }
+
+  /**
+   * Sets the pool keeping the header view holders evicted from the header cache, to share it
+   * with the decorations of other lists using the same header views.
+   *
+   * @param headerPool
+   *   the header pool to use, or null to use a pool of this decoration's own
+   */
+  public void setHeaderPool(@Nullable HeaderPool headerPool) {
+    headers.setPool(headerPool);
+  }
+
+  /**
+   * @return the header view pool
+   */
+  @NonNull
+  public HeaderPool getHeaderPool() {
+    return headers.getPool();
+  }
+
+  /**
+   * Sets the pool keeping the subheader view holders evicted from the subheader cache, to share
+   * it with the decorations of other lists using the same subheader views. Must not be the pool
+   * of the headers, unless headers and subheaders use distinct view types.
+   *
+   * @param subHeaderPool
+   *   the subheader pool to use, or null to use a pool of this decoration's own
+   */
+  public void setSubHeaderPool(@Nullable HeaderPool subHeaderPool) {
+    subHeaders.setPool(subHeaderPool);
+  }
+
+  /**
+   * @return the subheader view pool
+   */
+  @NonNull
+  public HeaderPool getSubHeaderPool() {
+    return subHeaders.getPool();
+  }
+
+  /**
+   * Notifies that part of the cached header of the given id changed. The payload is handed to
+   * the adapter's
+   * {@link PayloadHeaderAdapter#onBindHeaderViewHolder(RecyclerView.ViewHolder, int, List)}
+   * when the header is next drawn, instead of binding it again. Adapters which don't implement
+   * {@link PayloadHeaderAdapter} bind the header again.
+   *
+   * @param headerId
+   *   the header id
+   * @param payload
+   *   the description of the change, or null to bind the header again
+   */
+  public void notifyHeaderChanged(long headerId, @Nullable Object payload) {
+    headers.notifyChanged(headerId, payload);
+  }
+
+  /**
+   * Notifies that part of the cached subheader of the given id changed. The payload is handed to
+   * the adapter's
+   * {@link PayloadDoubleHeaderAdapter#onBindSubHeaderViewHolder(RecyclerView.ViewHolder, int, List)}
+   * when the subheader is next drawn, instead of binding it again. Adapters which don't implement
+   * {@link PayloadDoubleHeaderAdapter} bind the subheader again.
+   *
+   * @param subHeaderId
+   *   the subheader id
+   * @param payload
+   *   the description of the change, or null to bind the subheader again
+   */
+  public void notifySubHeaderChanged(long subHeaderId, @Nullable Object payload) {
+    subHeaders.notifyChanged(subHeaderId, payload);
+  }
+
+  /**
+   * Replaces the known header heights, e.g. with the ones saved to the instance state before a
+   * configuration change or written to a file, so the first layout doesn't have to create and
+   * measure the headers.
+   *
+   * @param headerHeights
+   *   the header heights to use
+   */
+  public void setHeaderHeights(@NonNull HeaderHeights headerHeights) {
+    headers.setHeights(headerHeights);
+  }
+
+  /**
+   * @return the measured header heights, to be saved to the instance state or a file
+   */
+  @NonNull
+  public HeaderHeights getHeaderHeights() {
+    return headers.getHeights();
+  }
+
+  /**
+   * Replaces the known subheader heights, e.g. with the ones saved to the instance state before a
+   * configuration change or written to a file, so the first layout doesn't have to create and
+   * measure the subheaders.
+   *
+   * @param subHeaderHeights
+   *   the subheader heights to use
+   */
+  public void setSubHeaderHeights(@NonNull HeaderHeights subHeaderHeights) {
+    subHeaders.setHeights(subHeaderHeights);
+  }
+
+  /**
+   * @return the measured subheader heights, to be saved to the instance state or a file
+   */
+  @NonNull
+  public HeaderHeights getSubHeaderHeights() {
+    return subHeaders.getHeights();
+  }
+
+  /**
+   * Sets the version of the header and subheader layouts. Known heights measured with another
+   * version are dropped, so the version should change whenever the header or subheader layouts
+   * change in a way affecting their heights, e.g. with an app update.
+   *
+   * @param version
+   *   the version of the header and subheader layouts
+   */
+  public void setHeaderLayoutVersion(int version) {
+    headers.setLayoutVersion(version);
+    subHeaders.setLayoutVersion(version);
+  }
+
   /**
    * Clears both the header and subheader view cache. Headers and subheaders will be recreated and
    * rebound on list scroll after this method has been called.
@@ -77,7 +444,11 @@ public void clearDoubleHeaderCache() {
    * rebound on list scroll after this method has been called.
    */
   public void clearSubHeaderCache() {
-    subHeaderCache.clear();
+    if (overlay != null) {
+      overlay.hide(OVERLAY_SUB_HEADER_SLOT);
+    }
+    subHeaders.clear();
+    subHeaderSections.invalidate();
   }
 
   /**
@@ -85,124 +456,297 @@ public void clearSubHeaderCache() {
    * rebound on list scroll after this method has been called.
    */
   public void clearHeaderCache() {
-    headerCache.clear();
+    if (overlay != null) {
+      overlay.hide(OVERLAY_HEADER_SLOT);
+    }
+    headers.clear();
+    headerSections.invalidate();
   }
 
-  @NonNull
-  private RecyclerView.ViewHolder getSubHeader(@NonNull RecyclerView parent, int position, boolean shouldBind) {
-    final long key = adapter.getSubHeaderId(position);
+  /**
+   * Marks all cached headers and subheaders to be rebound on their next use. They are rebound
+   * automatically when the list's adapter notifies a data change, so this is only needed when
+   * header content changes without such a notification.
+   */
+  public void invalidateHeaders() {
+    headers.invalidate();
+    subHeaders.invalidate();
+  }
 
-    if (subHeaderCache.containsKey(key)) {
-      RecyclerView.ViewHolder holder = subHeaderCache.get(key);
-      if (shouldBind) {
-        //noinspection unchecked
-        adapter.onBindSubHeaderHolder(holder, position);
-        final View header = holder.itemView;
-        measureView(parent, header);
-      }
-      return holder;
-    } else {
-      final RecyclerView.ViewHolder holder = adapter.onCreateSubHeaderHolder(parent);
-      final View header = holder.itemView;
+  /**
+   * Marks the cached header of the given id to be rebound on its next use.
+   *
+   * @param headerId
+   *   the header id
+   */
+  public void invalidateHeader(long headerId) {
+    headers.invalidate(headerId);
+  }
 
-      //noinspection unchecked
-      adapter.onBindSubHeaderHolder(holder, position);
-      measureView(parent, header);
-      subHeaderCache.put(key, holder);
+  /**
+   * Marks the cached subheader of the given id to be rebound on its next use.
+   *
+   * @param subHeaderId
+   *   the subheader id
+   */
+  public void invalidateSubHeader(long subHeaderId) {
+    subHeaders.invalidate(subHeaderId);
+  }
 
-      return holder;
-    }
+  private void onDataChanged() {
+    invalidateSections();
+    invalidateHeaders();
   }
 
-  @Nullable
-  public View findHeaderViewUnder(float x, float y) {
-    for (RecyclerView.ViewHolder holder : headerCache.values()) {
-      final View child = holder.itemView;
-      final float translationX = child.getTranslationX();
-      final float translationY = child.getTranslationY();
-
-      if (x >= child.getLeft() + translationX &&
-        x <= child.getRight() + translationX &&
-        y >= child.getTop() + translationY &&
-        y <= child.getBottom() + translationY) {
-        return child;
-      }
+  /**
+   * Rebinds the headers and subheaders of the items between start, inclusive, and end,
+   * exclusive, and indexes their sections again. The items following them were moved by the given
+   * offset.
+   */
+  private void onDataChanged(int start, int end, int offset) {
+    headers.invalidateRange(headerSections, start, end);
+    subHeaders.invalidateRange(subHeaderSections, start, end);
+    if (offset != 0) {
+      headers.offsetPositions(end, offset);
+      subHeaders.offsetPositions(end, offset);
     }
+    headerSections.invalidateRange(start, end, offset);
+    subHeaderSections.invalidateRange(start, end, offset);
+  }
 
-    return null;
+  private void invalidateSections() {
+    headerSections.invalidate();
+    subHeaderSections.invalidate();
   }
 
-  @Nullable
-  public View findSubHeaderViewUnder(float x, float y) {
-    for (RecyclerView.ViewHolder holder : subHeaderCache.values()) {
-      final View child = holder.itemView;
-      final float translationX = child.getTranslationX();
-      final float translationY = child.getTranslationY();
-
-      if (x >= child.getLeft() + translationX &&
-        x <= child.getRight() + translationX &&
-        y >= child.getTop() + translationY &&
-        y <= child.getBottom() + translationY) {
-        return child;
+  /**
+   * Keeps the section indexes in sync with the data of the list's adapter, and the headers
+   * trimmed while the list is shown.
+   */
+  private void observeAdapter(@NonNull RecyclerView parent) {
+    trimmer.attach(parent);
+
+    final RecyclerView.Adapter adapter = parent.getAdapter();
+    if (adapter != observedAdapter) {
+      if (observedAdapter != null) {
+        observedAdapter.unregisterAdapterDataObserver(dataObserver);
+      }
+      if (adapter != null) {
+        adapter.registerAdapterDataObserver(dataObserver);
       }
+      observedAdapter = adapter;
+      invalidateSections();
     }
 
-    return null;
+    if (adapter != null) {
+      headerSections.setItemCount(adapter.getItemCount());
+      subHeaderSections.setItemCount(adapter.getItemCount());
+    }
   }
 
-  @NonNull
-  private RecyclerView.ViewHolder getHeader(@NonNull RecyclerView parent, int position, boolean shouldBind) {
-    final long key = adapter.getHeaderId(position);
+  /**
+   * Stops observing the list's adapter, so an adapter outliving the list doesn't keep the
+   * decoration alive. The adapter is observed again when the list is next drawn.
+   */
+  private void stopObservingAdapter() {
+    if (observedAdapter != null) {
+      observedAdapter.unregisterAdapterDataObserver(dataObserver);
+      observedAdapter = null;
+    }
+  }
 
-    if (headerCache.containsKey(key)) {
-      RecyclerView.ViewHolder holder = headerCache.get(key);
-      if (shouldBind) {
-        //noinspection unchecked
-        adapter.onBindHeaderHolder(holder, position);
-        final View header = holder.itemView;
-        measureView(parent, header);
-      }
-      return holder;
-    } else {
-      final RecyclerView.ViewHolder holder = adapter.onCreateHeaderHolder(parent);
-      final View header = holder.itemView;
+  @Nullable
+  private RecyclerView.ViewHolder getSubHeader(@NonNull RecyclerView parent, int position) {
+    return subHeaders.getHeader(parent, subHeaderSections.getId(position), position, false);
+  }
 
-      //noinspection unchecked
-      adapter.onBindHeaderHolder(holder, position);
-      measureView(parent, header);
-      headerCache.put(key, holder);
+  /**
+   * @return the height of the subheader of the given position, or the placeholder height if it
+   * is being created in the background
+   */
+  private int getSubHeaderViewHeight(@NonNull RecyclerView parent, int position) {
+    final RecyclerView.ViewHolder holder = getSubHeader(parent, position);
+    return holder != null ? holder.itemView.getHeight() : subHeaders.getPlaceholderHeight();
+  }
 
-      return holder;
-    }
+  @Nullable
+  public View findHeaderViewUnder(float x, float y) {
+    return headers.getCache().findHeaderViewUnder(x, y);
   }
 
-  private void measureView(@NonNull RecyclerView parent, @NonNull View header) {
-    int widthSpec = View.MeasureSpec.makeMeasureSpec(parent.getWidth(), View.MeasureSpec.EXACTLY);
-    int heightSpec = View.MeasureSpec.makeMeasureSpec(parent.getHeight(), View.MeasureSpec.UNSPECIFIED);
+  @Nullable
+  public View findSubHeaderViewUnder(float x, float y) {
+    return subHeaders.getCache().findHeaderViewUnder(x, y);
+  }
 
-    int childWidth = ViewGroup.getChildMeasureSpec(widthSpec, parent.getPaddingLeft() + parent.getPaddingRight(), header.getLayoutParams().width);
-    int childHeight = ViewGroup.getChildMeasureSpec(heightSpec, parent.getPaddingTop() + parent.getPaddingBottom(), header.getLayoutParams().height);
+  @Nullable
+  private RecyclerView.ViewHolder getHeader(@NonNull RecyclerView parent, int position) {
+    return headers.getHeader(parent, headerSections.getId(position), position, false);
+  }
 
-    header.measure(childWidth, childHeight);
-    header.layout(0, 0, header.getMeasuredWidth(), header.getMeasuredHeight());
+  /**
+   * @return the height of the header of the given position, or the placeholder height if it is
+   * being created in the background
+   */
+  private int getHeaderViewHeight(@NonNull RecyclerView parent, int position) {
+    final RecyclerView.ViewHolder holder = getHeader(parent, position);
+    return holder != null ? holder.itemView.getHeight() : headers.getPlaceholderHeight();
   }
 
   private boolean hasSubHeader(int position) {
-    if (adapter.getSubHeaderId(position) == StickyHeaderDecoration.NO_HEADER_ID) {
+    if (subHeaderSections.getId(position) == StickyHeaderDecoration.NO_HEADER_ID) {
       return false;
     }
 
-    int previous = position - 1;
-    return adapter.getSubHeaderId(position) != adapter.getSubHeaderId(previous);
+    return subHeaderSections.isSectionStart(position);
   }
 
   private boolean hasHeader(int position) {
-    if (position == 0) {
-      return true;
+    return headerSections.isSectionStart(position);
+  }
+
+  /**
+   * Starts collecting metrics of the work done by this decoration into the given metrics, or stops
+   * collecting them. Headers and subheaders are counted together.
+   *
+   * @param metrics
+   *   the metrics to update, or null to disable them
+   */
+  public void setMetrics(@Nullable HeaderMetrics metrics) {
+    this.metrics = metrics;
+    headers.setMetrics(metrics);
+    subHeaders.setMetrics(metrics);
+  }
+
+  /**
+   * @return the metrics updated by this decoration, or null if they are disabled
+   */
+  @Nullable
+  public HeaderMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Enables trace sections around the work done by this decoration, shown in systrace and Perfetto
+   * captures on API 18 and above.
+   *
+   * @param tracing
+   *   true to emit trace sections
+   */
+  public void setTracingEnabled(boolean tracing) {
+    this.tracing = tracing;
+    headers.setTracing(tracing);
+    subHeaders.setTracing(tracing);
+  }
+
+  /**
+   * Enables drawing sticky headers from a snapshot of their rendering instead of drawing their
+   * views on every frame, which is cheaper for complex headers. A header's snapshot is recorded
+   * when it is first drawn and only recorded again after the header is rebound or resized, so
+   * headers whose views change without being rebound, e.g. when an image finishes loading, must
+   * be refreshed with {@link #invalidateHeader(long)} or {@link #invalidateSubHeader(long)}.
+   *
+   * @param enabled
+   *   true to draw headers from snapshots
+   */
+  public void setSnapshotsEnabled(boolean enabled) {
+    headers.setSnapshots(enabled);
+    subHeaders.setSnapshots(enabled);
+  }
+
+  /**
+   * Creates the header view holders on the given executor instead of the main thread. Created
+   * holders are handed to the header caches on the main thread, and until then the space of a
+   * header is held by a placeholder of the last measured or the estimated header height. The
+   * adapter must implement {@link AsyncHeaderAdapter}; subheaders are only created in the
+   * background if it implements {@link AsyncDoubleHeaderAdapter}.
+   *
+   * @param executor
+   *   the executor creating header view holders, or null to create them on the main thread
+   */
+  public void setHeaderExecutor(@Nullable Executor executor) {
+    if (executor != null && !(adapter instanceof AsyncHeaderAdapter)) {
+      throw new IllegalStateException("The adapter must implement AsyncHeaderAdapter to create headers in the background");
+    }
+    headers.setExecutor(executor);
+    subHeaders.setExecutor(adapter instanceof AsyncDoubleHeaderAdapter ? executor : null);
+  }
+
+  /**
+   * Sets the number of sections ahead of the visible ones in the scroll direction whose headers
+   * and subheaders are created, bound and measured in the gap between frames while the list
+   * scrolls, so they are ready when they scroll into view. Prefetching a header is skipped when it
+   * isn't expected to end before the next frame is due. Prefetching is disabled by default.
+   *
+   * @param count
+   *   the number of sections to prefetch, or 0 to disable prefetching
+   */
+  public void setPrefetchSectionCount(int count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("count < 0");
+    }
+    prefetcher.setSectionCount(count);
+    headers.setPrefetching(count > 0);
+    subHeaders.setPrefetching(count > 0);
+  }
+
+  /**
+   * Creates, binds and measures the headers and subheaders of the next {@code count} sections
+   * below the visible items while the main thread is idle, so the first scroll doesn't have to
+   * create them. Meant to be called right after the list is set up; stops as soon as the list is
+   * touched. The header cache should be able to hold the visible and pre-warmed headers and
+   * subheaders.
+   *
+   * @param parent
+   *   the list this decoration is added to
+   * @param count
+   *   the number of sections to prepare
+   */
+  public void prewarmHeaders(@NonNull RecyclerView parent, int count) {
+    prewarmer.start(parent, count);
+  }
+
+  /**
+   * Sets the memory trim level from which the headers and subheaders which are not on screen are
+   * dropped, and the pooled ones with them, when the system reports memory pressure. All the
+   * headers and subheaders are released when the list is detached from its window. Defaults to
+   * {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW}.
+   *
+   * @param level
+   *   one of the {@code TRIM_MEMORY_*} levels of {@link ComponentCallbacks2}
+   */
+  public void setTrimMemoryLevel(int level) {
+    trimmer.setTrimLevel(level);
+  }
+
+  /**
+   * Shows the pinned header and subheader as real child views of the given container instead of
+   * drawing them on the list, so they can use their own hardware layers, ripples and animations,
+   * and scrolling only moves them. The pinned header is shown above the pinned subheader. Headers
+   * and subheaders which are not pinned are still drawn on the list.
+   * <p>
+   * The container must be laid over the list with the same bounds and no padding, e.g. a
+   * FrameLayout sibling declared after the list. Touches outside the pinned headers go through to
+   * the list, unless the container itself is clickable.
+   *
+   * @param container
+   *   the container of the pinned headers, or null to draw them on the list
+   */
+  public void setOverlayContainer(@Nullable ViewGroup container) {
+    if (overlay != null) {
+      if (overlay.getContainer() == container) {
+        return;
+      }
+      overlay.hide();
     }
+    overlay = container != null ? new HeaderOverlay(container, 2) : null;
+  }
 
-    int previous = position - 1;
-    return adapter.getHeaderId(position) != adapter.getHeaderId(previous);
+  /**
+   * Stops pre-warming headers started with {@link #prewarmHeaders(RecyclerView, int)}.
+   */
+  public void cancelPrewarm() {
+    prewarmer.cancel();
   }
 
   /**
@@ -210,6 +754,13 @@ private boolean hasHeader(int position) {
    */
   @Override
   public void getItemOffsets(@NonNull Rect outRect, @NonNull View view, @NonNull RecyclerView parent, @NonNull RecyclerView.State state) {
+    final HeaderMetrics metrics = this.metrics;
+    final long start = metrics != null ? System.nanoTime() : 0;
+    if (tracing) {
+      HeaderTrace.begin(HeaderTrace.ITEM_OFFSETS);
+    }
+
+    observeAdapter(parent);
 
     int position = parent.getChildAdapterPosition(view);
 
@@ -217,17 +768,83 @@ public void getItemOffsets(@NonNull Rect outRect, @NonNull View view, @NonNull R
 
     if (position != RecyclerView.NO_POSITION) {
       if (hasHeader(position)) {
-        View header = getHeader(parent, position, true).itemView;
-        headerHeight += header.getHeight();
+        headerHeight += headers.getLayoutHeight(parent, headerSections.getId(position), position);
       }
 
       if (hasSubHeader(position)) {
-        View header = getSubHeader(parent, position, true).itemView;
-        headerHeight += getSubHeaderHeightForLayout(header);
+        headerHeight += getSubHeaderHeightForLayout(subHeaders.getLayoutHeight(parent, subHeaderSections.getId(position), position));
       }
     }
 
     outRect.set(0, headerHeight, 0, 0);
+
+    if (tracing) {
+      HeaderTrace.end();
+    }
+    if (metrics != null) {
+      metrics.onItemOffsets(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Prepares the headers of the first header or subheader section starting at or after the given
+   * position.
+   */
+  private int prewarmSection(@NonNull RecyclerView parent, int position) {
+    observeAdapter(parent);
+    final int itemCount = parent.getAdapter().getItemCount();
+    if (position >= itemCount) {
+      return RecyclerView.NO_POSITION;
+    }
+
+    final int headerStart = headerSections.isSectionStart(position) ? position : headerSections.getNextSectionStart(position);
+    final int subHeaderStart = subHeaderSections.isSectionStart(position) ? position : subHeaderSections.getNextSectionStart(position);
+    final int start = Math.min(headerStart, subHeaderStart);
+    if (start >= itemCount) {
+      return RecyclerView.NO_POSITION;
+    }
+
+    if (hasHeader(start)) {
+      headers.prewarm(parent, headerSections.getId(start), start);
+    }
+    if (hasSubHeader(start)) {
+      subHeaders.prewarm(parent, subHeaderSections.getId(start), start);
+    }
+    return start + 1;
+  }
+
+  /**
+   * Prefetches the headers of the first header or subheader section boundary at the given
+   * position or beyond it in the given direction.
+   */
+  private int prefetchSection(@NonNull RecyclerView parent, int position, int direction, long deadlineNanos) {
+    observeAdapter(parent);
+    final int itemCount = parent.getAdapter().getItemCount();
+    if (position < 0 || position >= itemCount) {
+      return RecyclerView.NO_POSITION;
+    }
+
+    final int start;
+    if (direction > 0) {
+      final int headerStart = headerSections.isSectionStart(position) ? position : headerSections.getNextSectionStart(position);
+      final int subHeaderStart = subHeaderSections.isSectionStart(position) ? position : subHeaderSections.getNextSectionStart(position);
+      start = Math.min(headerStart, subHeaderStart);
+    } else {
+      final int headerStart = headerSections.getSectionStart(headerSections.getSection(position));
+      final int subHeaderStart = subHeaderSections.getSectionStart(subHeaderSections.getSection(position));
+      start = Math.max(headerStart, subHeaderStart);
+    }
+    if (start >= itemCount) {
+      return RecyclerView.NO_POSITION;
+    }
+
+    if (hasHeader(start) && !headers.prefetch(parent, headerSections.getId(start), start, deadlineNanos)) {
+      return RecyclerView.NO_POSITION;
+    }
+    if (hasSubHeader(start) && !subHeaders.prefetch(parent, subHeaderSections.getId(start), start, deadlineNanos)) {
+      return RecyclerView.NO_POSITION;
+    }
+    return start + direction;
   }
 
   /**
@@ -235,160 +852,108 @@ public void getItemOffsets(@NonNull Rect outRect, @NonNull View view, @NonNull R
    */
   @Override
   public void onDrawOver(@NonNull Canvas canvas, @NonNull RecyclerView parent, @NonNull RecyclerView.State state) {
-    final int count = parent.getChildCount();
+    final HeaderMetrics metrics = this.metrics;
+    final long start = metrics != null ? System.nanoTime() : 0;
+    if (tracing) {
+      HeaderTrace.begin(HeaderTrace.DRAW_OVER);
+    }
 
-    boolean headerDrawn = false;
-    for (int layoutPos = 0; layoutPos < count; layoutPos++) {
-      View child = parent.getChildAt(layoutPos);
-      boolean visible = getAnimatedTop(child) > -child.getHeight()/* && child.getTop() < parent.getHeight()*/;
-      final int adapterPos = parent.getChildAdapterPosition(child);
-      if (visible && adapterPos != RecyclerView.NO_POSITION && (!headerDrawn || hasSubHeader(adapterPos) || hasHeader(adapterPos))) {
-        int left, top;
-
-        long headerId = adapter.getHeaderId(adapterPos);
-        View header = getHeader(parent, adapterPos, false).itemView;
-
-        long subHeaderId = adapter.getSubHeaderId(adapterPos);
-        View subHeader = getSubHeader(parent, adapterPos, false).itemView;
-
-        if (hasSubHeader(adapterPos)) {
-          canvas.save();
-          left = child.getLeft();
-          top = getSubHeaderTop(parent, child, header, subHeader, adapterPos, layoutPos);
-          canvas.translate(left, top);
-          subHeader.setTranslationX(left);
-          subHeader.setTranslationY(top);
-          subHeader.draw(canvas);
-          canvas.restore();
-
-          if (positionListener != null) {
-            positionListener.onSubHeaderPositionChanged(subHeaderId, left, top);
-          }
-        }
-        // draw part of previous subheader which should be visible
-        else if (adapterPos > 0 && adapter.getHeaderId(adapterPos) == adapter.getHeaderId(adapterPos - 1)) {
-          subHeader = getSubHeader(parent, adapterPos - 1, false).itemView;
-
-          canvas.save();
-          left = child.getLeft();
-          top = getSubHeaderTop(parent, child, header, subHeader, adapterPos - 1, layoutPos);
-          canvas.translate(left, top);
-          subHeader.setTranslationX(left);
-          subHeader.setTranslationY(top);
-          subHeader.draw(canvas);
-          canvas.restore();
-
-          if (positionListener != null) {
-            positionListener.onSubHeaderPositionChanged(subHeaderId, left, top);
-          }
-        }
+    observeAdapter(parent);
+    takeSnapshot(parent);
 
-        if (!headerDrawn || hasHeader(adapterPos)) {
-          canvas.save();
-          left = child.getLeft();
-          top = getHeaderTop(parent, child, header, subHeader, adapterPos, layoutPos);
-          canvas.translate(left, top);
-          header.setTranslationX(left);
-          header.setTranslationY(top);
-          header.draw(canvas);
-          canvas.restore();
-
-          if (positionListener != null) {
-            positionListener.onHeaderPositionChanged(headerId, left, top);
-          }
-
-          // draw part of previous header which should be visible
-          if (getBetweenHeadersMargin() != 0 && top <= -getBetweenHeadersMargin() && adapterPos > 0 && adapter.getHeaderId(adapterPos) != adapter.getHeaderId(adapterPos - 1)) {
-            headerId = adapter.getHeaderId(adapterPos - 1);
-            header = getHeader(parent, adapterPos - 1, false).itemView;
-            child = parent.getChildAt(layoutPos);
-
-            canvas.save();
-            left = child.getLeft();
-            top = getHeaderTop(parent, child, header, subHeader, adapterPos - 1, layoutPos);
-            top += getBetweenHeadersMargin() * 2;
-            canvas.translate(left, top);
-            header.setTranslationX(left);
-            header.setTranslationY(top);
-            header.draw(canvas);
-            canvas.restore();
-
-            if (positionListener != null) {
-              positionListener.onHeaderPositionChanged(headerId, left, top);
-            }
-          }
-        }
+    final HeaderLayoutEngine layout = this.layout;
+    headerHeights.parent = parent;
+    layout.layoutDouble(children, headerHeights, renderInline, getBetweenHeadersMargin());
+    headerHeights.parent = null;
 
-        headerDrawn = true;
-      }
+    final HeaderOverlay overlay = this.overlay;
+    if (overlay != null) {
+      overlay.beginFrame();
     }
-  }
+    for (int i = 0; i < layout.drawCount; i++) {
+      final boolean isHeader = layout.drawLevels[i] == HeaderLayoutEngine.LEVEL_HEADER;
+      final int position = layout.drawPositions[i];
+      final RecyclerView.ViewHolder holder = isHeader ? getHeader(parent, position) : getSubHeader(parent, position);
+      if (holder == null) {
+        continue;
+      }
 
-  private int getSubHeaderTop(@NonNull RecyclerView parent, @NonNull View child, @NonNull View header, @NonNull View subHeader, int adapterPos, int layoutPos) {
+      final View header = holder.itemView;
+      final int left = layout.drawLefts[i];
+      final int top = layout.drawTops[i];
+
+      if (overlay != null && layout.drawPinned[i]) {
+        overlay.show(isHeader ? OVERLAY_HEADER_SLOT : OVERLAY_SUB_HEADER_SLOT, header, left, top);
+      } else {
+        if (overlay != null) {
+          overlay.hide(header);
+        }
+        canvas.save();
+        canvas.translate(left, top);
+        header.setTranslationX(left);
+        header.setTranslationY(top);
+        (isHeader ? headers : subHeaders).draw(canvas, layout.drawIds[i], header);
+        canvas.restore();
+      }
 
-    int top = getAnimatedTop(child) - getSubHeaderHeightForLayout(subHeader);
-    int maxTop = header.getHeight();
-    final int count = parent.getChildCount();
-    final long currentHeaderId = adapter.getHeaderId(adapterPos);
-    final long currentSubHeaderId = adapter.getSubHeaderId(adapterPos);
-
-    // find next view with sub-header and compute the offscreen push if needed
-    for (int i = layoutPos + 1; i < count; i++) {
-      final View next = parent.getChildAt(i);
-      int adapterPosHere = parent.getChildAdapterPosition(next);
-      if (adapterPosHere != RecyclerView.NO_POSITION) {
-        final long nextHeaderId = adapter.getHeaderId(adapterPosHere);
-        final long nextSubHeaderId = adapter.getSubHeaderId(adapterPosHere);
-
-        if ((nextSubHeaderId != currentSubHeaderId)) {
-          int headersHeight = getSubHeaderHeightForLayout(subHeader) + getSubHeader(parent, adapterPosHere, false).itemView.getHeight();
-          if (nextHeaderId != currentHeaderId) {
-            headersHeight += getHeader(parent, adapterPosHere, false).itemView.getHeight();
-          }
-
-          final int offset = getAnimatedTop(next) - headersHeight;
-          if (offset < header.getHeight()) {
-            return offset;
-          } else {
-            break;
-          }
+      if (positionListener != null) {
+        if (isHeader) {
+          positionListener.onHeaderPositionChanged(layout.drawIds[i], left, top);
+        } else {
+          positionListener.onSubHeaderPositionChanged(layout.drawIds[i], left, top);
         }
       }
     }
 
-    return Math.max(maxTop, top);
-  }
+    if (overlay != null) {
+      overlay.endFrame();
+    }
 
-  private int getHeaderTop(@NonNull RecyclerView parent, @NonNull View child, @NonNull View header, @NonNull View subHeader, int adapterPos, int layoutPos) {
+    headers.endFrame();
+    subHeaders.endFrame();
+    prefetcher.onFrame(parent, children);
+    // the items were laid out with a declared header height the header doesn't have
+    if (headers.consumeHeightMismatch() | subHeaders.consumeHeightMismatch()) {
+      parent.invalidateItemDecorations();
+    }
 
-    int top = getAnimatedTop(child) - header.getHeight() - getSubHeaderHeightForLayout(subHeader);
-    if (isFirstValidChild(layoutPos, parent)) {
-      final int count = parent.getChildCount();
-      final long currentId = adapter.getHeaderId(adapterPos);
+    if (tracing) {
+      HeaderTrace.end();
+    }
+    if (metrics != null) {
+      metrics.onDraw(System.nanoTime() - start);
+    }
+  }
 
-      // find next view with header and compute the offscreen push if needed
-      for (int i = layoutPos + 1; i < count; i++) {
-        View next = parent.getChildAt(i);
-        int adapterPosHere = parent.getChildAdapterPosition(next);
-        if (adapterPosHere != RecyclerView.NO_POSITION) {
-          long nextId = adapter.getHeaderId(adapterPosHere);
-          if (nextId != currentId) {
-            final int headersHeight = header.getHeight() + getHeader(parent, adapterPosHere, false).itemView.getHeight();
-            final int offset = getAnimatedTop(next) - headersHeight - getSubHeaderHeightForLayout(subHeader);
+  /**
+   * Gathers the adapter positions, animated bounds and header ids of all children in a single
+   * pass, so laying out the headers doesn't need to query the children again.
+   */
+  private void takeSnapshot(@NonNull RecyclerView parent) {
+    final ChildSnapshot children = this.children;
+    final int count = parent.getChildCount();
+    children.reset(count);
 
-            if (offset < getBetweenHeadersMargin()) {
-              return offset - getBetweenHeadersMargin();
-            } else {
-              break;
-            }
-          }
+    for (int i = 0; i < count; i++) {
+      final View child = parent.getChildAt(i);
+      final int adapterPos = parent.getChildAdapterPosition(child);
+      children.positions[i] = adapterPos;
+      children.lefts[i] = child.getLeft();
+      children.tops[i] = getAnimatedTop(child);
+      children.heights[i] = child.getHeight();
+      if (adapterPos != RecyclerView.NO_POSITION) {
+        children.headerIds[i] = headerSections.getId(adapterPos);
+        children.subHeaderIds[i] = subHeaderSections.getId(adapterPos);
+        children.headerStarts[i] = headerSections.isSectionStart(adapterPos);
+        children.subHeaderStarts[i] = subHeaderSections.isSectionStart(adapterPos);
+        if (adapterPos > 0) {
+          children.previousHeaderIds[i] = headerSections.getId(adapterPos - 1);
+          children.previousSubHeaderIds[i] = subHeaderSections.getId(adapterPos - 1);
         }
       }
-
-      top = Math.max(0, top);
     }
 
-    return top;
+    children.link();
   }
 
   /**
@@ -404,26 +969,28 @@ public void setBetweenHeadersMargin(int betweenHeadersMargin) {
     this.betweenHeadersMargin = betweenHeadersMargin;
   }
 
-  private boolean isFirstValidChild(int layoutPos, @NonNull RecyclerView parent) {
-    boolean isFirstValidChild = true;
-    for (int otherLayoutPos = layoutPos - 1; otherLayoutPos >= 0; --otherLayoutPos) {
-      final View otherChild = parent.getChildAt(otherLayoutPos);
-      if (parent.getChildAdapterPosition(otherChild) != RecyclerView.NO_POSITION) {
-        boolean visible = getAnimatedTop(otherChild) > -otherChild.getHeight();
-        if (visible) {
-          isFirstValidChild = false;
-          break;
-        }
-      }
-    }
-    return isFirstValidChild;
-  }
-
   private int getAnimatedTop(@NonNull View child) {
     return child.getTop() + (int) child.getTranslationY();
   }
 
-  private int getSubHeaderHeightForLayout(@NonNull View header) {
-    return renderInline ? 0 : header.getHeight();
+  private int getSubHeaderHeightForLayout(int subHeaderHeight) {
+    return renderInline ? 0 : subHeaderHeight;
+  }
+
+  /**
+   * Provides the heights of the cached header views to the layout engine.
+   */
+  private final class ViewHeaderHeights implements HeaderLayoutEngine.HeaderHeights {
+    RecyclerView parent;
+
+    @Override
+    public int getHeaderHeight(int position) {
+      return getHeaderViewHeight(parent, position);
+    }
+
+    @Override
+    public int getSubHeaderHeight(int position) {
+      return getSubHeaderViewHeight(parent, position);
+    }
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import androidx.annotation.Nullable;
+
+/**
+ * The adapter to assist the {@link DoubleTextHeaderDecoration} in drawing text headers and
+ * subheaders.
+ */
+public interface DoubleTextHeaderAdapter extends TextHeaderAdapter {
+  /**
+   * Returns the subheader id for the item at the given position. Not called when the adapter
+   * implements {@link SectionedDoubleHeaderAdapter}.
+   *
+   * @param position
+   *   the item position
+   *
+   * @return the subheader id
+   */
+  long getSubHeaderId(int position);
+
+  /**
+   * Returns the text of the subheader for the item at the given position. Only called the first
+   * time a subheader is drawn after a data change.
+   *
+   * @param position
+   *   the subheader's item position
+   *
+   * @return the subheader text, or null to draw the subheader without text
+   */
+  @Nullable
+  CharSequence getSubHeaderText(int position);
+}
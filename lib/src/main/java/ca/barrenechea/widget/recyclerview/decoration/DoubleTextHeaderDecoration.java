@@ -0,0 +1,282 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * A double sticky header decoration for android's RecyclerView which draws single line text
+ * headers and subheaders directly on the canvas, without inflating a view per header.
+ * <p>
+ * Headers and subheaders are laid out like the ones of a {@link DoubleHeaderDecoration}.
+ */
+public class DoubleTextHeaderDecoration extends RecyclerView.ItemDecoration {
+  private final TextHeaderRenderer headers;
+  private final TextHeaderRenderer subHeaders;
+  private final boolean renderInline;
+  private int betweenHeadersMargin = 0;
+  private DoubleHeaderAdapter.DoubleHeaderPositionListener positionListener;
+  private final ChildSnapshot children = new ChildSnapshot();
+  private final HeaderLayoutEngine layout = new HeaderLayoutEngine();
+  private final HeaderLayoutEngine.HeaderHeights headerHeights = new HeaderLayoutEngine.HeaderHeights() {
+    @Override
+    public int getHeaderHeight(int position) {
+      return headers.getHeight();
+    }
+
+    @Override
+    public int getSubHeaderHeight(int position) {
+      return subHeaders.getHeight();
+    }
+  };
+
+  private final SectionIndex headerSections;
+  private final SectionIndex subHeaderSections;
+  private RecyclerView.Adapter observedAdapter;
+  private final RecyclerView.AdapterDataObserver dataObserver = new RecyclerView.AdapterDataObserver() {
+    @Override
+    public void onChanged() {
+      onDataChanged();
+    }
+
+    @Override
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+      onDataChanged();
+    }
+
+    @Override
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+      onDataChanged();
+    }
+
+    @Override
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+      onDataChanged();
+    }
+
+    @Override
+    public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+      onDataChanged();
+    }
+  };
+
+  /**
+   * @param adapter
+   *   the double text header adapter to use
+   * @param headerStyle
+   *   the appearance of the headers
+   * @param subHeaderStyle
+   *   the appearance of the subheaders
+   */
+  public DoubleTextHeaderDecoration(@NonNull DoubleTextHeaderAdapter adapter, @NonNull TextHeaderStyle headerStyle,
+                                    @NonNull TextHeaderStyle subHeaderStyle) {
+    this(adapter, headerStyle, subHeaderStyle, false);
+  }
+
+  /**
+   * @param adapter
+   *   the double text header adapter to use
+   * @param headerStyle
+   *   the appearance of the headers
+   * @param subHeaderStyle
+   *   the appearance of the subheaders
+   */
+  public DoubleTextHeaderDecoration(@NonNull final DoubleTextHeaderAdapter adapter, @NonNull TextHeaderStyle headerStyle,
+                                    @NonNull TextHeaderStyle subHeaderStyle, boolean renderInline) {
+    this.renderInline = renderInline;
+
+    this.headers = new TextHeaderRenderer(headerStyle) {
+      @Nullable
+      @Override
+      CharSequence getText(int position) {
+        return adapter.getHeaderText(position);
+      }
+    };
+    this.subHeaders = new TextHeaderRenderer(subHeaderStyle) {
+      @Nullable
+      @Override
+      CharSequence getText(int position) {
+        return adapter.getSubHeaderText(position);
+      }
+    };
+
+    this.headerSections = SectionIndex.forHeaders(adapter, new SectionIndex.IdSource() {
+      @Override
+      public long getId(int position) {
+        return adapter.getHeaderId(position);
+      }
+    });
+    this.subHeaderSections = SectionIndex.forSubHeaders(adapter, new SectionIndex.IdSource() {
+      @Override
+      public long getId(int position) {
+        return adapter.getSubHeaderId(position);
+      }
+    });
+  }
+
+  public void setPositionListener(DoubleHeaderAdapter.DoubleHeaderPositionListener positionListener) {
+    this.positionListener = positionListener;
+  }
+
+  /**
+   * Drops the cached header and subheader texts. Texts are asked for again automatically when the
+   * list's adapter notifies a data change, so this is only needed when header texts change without
+   * such a notification.
+   */
+  public void invalidateHeaders() {
+    headers.invalidate();
+    subHeaders.invalidate();
+  }
+
+  /**
+   * Space adjustment between 2 headers when the first over the second
+   *
+   * @return space in pixels
+   */
+  protected int getBetweenHeadersMargin() {
+    return betweenHeadersMargin;
+  }
+
+  public void setBetweenHeadersMargin(int betweenHeadersMargin) {
+    this.betweenHeadersMargin = betweenHeadersMargin;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void getItemOffsets(@NonNull Rect outRect, @NonNull View view, @NonNull RecyclerView parent, @NonNull RecyclerView.State state) {
+    observeAdapter(parent);
+
+    final int position = parent.getChildAdapterPosition(view);
+
+    int headerHeight = 0;
+
+    if (position != RecyclerView.NO_POSITION) {
+      if (headerSections.isSectionStart(position)) {
+        headerHeight += headers.getHeight();
+      }
+
+      if (!renderInline && hasSubHeader(position)) {
+        headerHeight += subHeaders.getHeight();
+      }
+    }
+
+    outRect.set(0, headerHeight, 0, 0);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onDrawOver(@NonNull Canvas canvas, @NonNull RecyclerView parent, @NonNull RecyclerView.State state) {
+    observeAdapter(parent);
+    takeSnapshot(parent);
+
+    final HeaderLayoutEngine layout = this.layout;
+    layout.layoutDouble(children, headerHeights, renderInline, getBetweenHeadersMargin());
+
+    final int width = parent.getWidth() - parent.getPaddingLeft() - parent.getPaddingRight();
+    for (int i = 0; i < layout.drawCount; i++) {
+      final boolean isHeader = layout.drawLevels[i] == HeaderLayoutEngine.LEVEL_HEADER;
+      final int left = layout.drawLefts[i];
+      final int top = layout.drawTops[i];
+      (isHeader ? headers : subHeaders).draw(canvas, layout.drawIds[i], layout.drawPositions[i], left, top, width);
+
+      if (positionListener != null) {
+        if (isHeader) {
+          positionListener.onHeaderPositionChanged(layout.drawIds[i], left, top);
+        } else {
+          positionListener.onSubHeaderPositionChanged(layout.drawIds[i], left, top);
+        }
+      }
+    }
+  }
+
+  private boolean hasSubHeader(int position) {
+    if (subHeaderSections.getId(position) == StickyHeaderDecoration.NO_HEADER_ID) {
+      return false;
+    }
+
+    return subHeaderSections.isSectionStart(position);
+  }
+
+  /**
+   * Keeps the section indexes in sync with the data of the list's adapter.
+   */
+  private void observeAdapter(@NonNull RecyclerView parent) {
+    final RecyclerView.Adapter adapter = parent.getAdapter();
+    if (adapter != observedAdapter) {
+      if (observedAdapter != null) {
+        observedAdapter.unregisterAdapterDataObserver(dataObserver);
+      }
+      if (adapter != null) {
+        adapter.registerAdapterDataObserver(dataObserver);
+      }
+      observedAdapter = adapter;
+      onDataChanged();
+    }
+
+    if (adapter != null) {
+      headerSections.setItemCount(adapter.getItemCount());
+      subHeaderSections.setItemCount(adapter.getItemCount());
+    }
+  }
+
+  private void onDataChanged() {
+    headerSections.invalidate();
+    subHeaderSections.invalidate();
+    invalidateHeaders();
+  }
+
+  /**
+   * Gathers the adapter positions, animated bounds and header ids of all children in a single
+   * pass.
+   */
+  private void takeSnapshot(@NonNull RecyclerView parent) {
+    final ChildSnapshot children = this.children;
+    final int count = parent.getChildCount();
+    children.reset(count);
+
+    for (int i = 0; i < count; i++) {
+      final View child = parent.getChildAt(i);
+      final int adapterPos = parent.getChildAdapterPosition(child);
+      children.positions[i] = adapterPos;
+      children.lefts[i] = child.getLeft();
+      children.tops[i] = child.getTop() + (int) child.getTranslationY();
+      children.heights[i] = child.getHeight();
+      if (adapterPos != RecyclerView.NO_POSITION) {
+        children.headerIds[i] = headerSections.getId(adapterPos);
+        children.subHeaderIds[i] = subHeaderSections.getId(adapterPos);
+        children.headerStarts[i] = headerSections.isSectionStart(adapterPos);
+        children.subHeaderStarts[i] = subHeaderSections.isSectionStart(adapterPos);
+        if (adapterPos > 0) {
+          children.previousHeaderIds[i] = headerSections.getId(adapterPos - 1);
+          children.previousSubHeaderIds[i] = subHeaderSections.getId(adapterPos - 1);
+        }
+      }
+    }
+
+    children.link();
+  }
+}
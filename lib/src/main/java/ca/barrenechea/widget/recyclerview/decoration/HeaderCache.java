@@ -0,0 +1,664 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A bounded cache of header view holders keyed by header id.
+ * <p>
+ * Holders are stored in an open addressing table of primitive header ids, so lookups neither box
+ * the id nor allocate.
+ * <p>
+ * Once the cache holds more holders than its {@link EvictionPolicy} allows, the least recently
+ * used holders are evicted at the end of a frame. Holders used since the previous frame are
+ * considered to be on screen and are never evicted. Evicted holders are handed to the header pool
+ * of their decoration, if any, to be reused for other headers of the same view type.
+ */
+public class HeaderCache {
+  public static final int DEFAULT_CAPACITY = 32;
+
+  /**
+   * Decides how many header view holders a {@link HeaderCache} may keep.
+   */
+  public interface EvictionPolicy {
+    /**
+     * Returns the number of holders the cache may keep after a frame.
+     *
+     * @param visibleCount
+     *   the number of holders used during the frame
+     *
+     * @return the cache capacity
+     */
+    int getCapacity(int visibleCount);
+  }
+
+  static final int NO_ENTRY = -1;
+
+  private static final int NONE = NO_ENTRY;
+  private static final int NO_MEASURE_SPEC = -1;
+
+  private final EvictionPolicy policy;
+  private HeaderPool pool;
+
+  // open addressing table of entry index + 1, zero marks an empty slot
+  private int[] table = new int[32];
+
+  // entries are linked in access order, from the least to the most recently used one
+  private long[] keys = new long[16];
+  private RecyclerView.ViewHolder[] holders = new RecyclerView.ViewHolder[16];
+  private int[] viewTypes = new int[16];
+  private int[] frames = new int[16];
+  private int[] previous = new int[16];
+  private int[] next = new int[16];
+
+  // the state of the holders' views, see HeaderController
+  private boolean[] bound = new boolean[16];
+  private boolean[] prefetched = new boolean[16];
+  private long[] versions = new long[16];
+  private int[] positions = new int[16];
+  private int[] widthSpecs = new int[16];
+  private int[] heightSpecs = new int[16];
+  private HeaderSnapshot[] snapshots = new HeaderSnapshot[16];
+  // payloads notified since the holders were last bound, lists are kept for reuse
+  @SuppressWarnings("unchecked")
+  private ArrayList<Object>[] payloads = new ArrayList[16];
+
+  private int head = NONE;
+  private int tail = NONE;
+  private int free = NONE;
+  private int allocated;
+  private int size;
+
+  private int frame;
+  private int visibleCount;
+  private int evictionCount;
+
+  /**
+   * Creates a least recently used cache of {@link #DEFAULT_CAPACITY} holders.
+   */
+  public HeaderCache() {
+    this(lruPolicy(DEFAULT_CAPACITY));
+  }
+
+  /**
+   * Creates a least recently used cache.
+   *
+   * @param capacity
+   *   the maximum number of holders to keep
+   */
+  public HeaderCache(int capacity) {
+    this(lruPolicy(capacity));
+  }
+
+  /**
+   * @param policy
+   *   the eviction policy to use
+   */
+  public HeaderCache(@NonNull EvictionPolicy policy) {
+    this.policy = policy;
+  }
+
+  /**
+   * Returns a policy which keeps at most {@code capacity} holders, on screen holders excluded.
+   *
+   * @param capacity
+   *   the maximum number of holders to keep
+   *
+   * @return the eviction policy
+   */
+  @NonNull
+  public static EvictionPolicy lruPolicy(final int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("capacity < 0");
+    }
+    return new EvictionPolicy() {
+      @Override
+      public int getCapacity(int visibleCount) {
+        return capacity;
+      }
+    };
+  }
+
+  /**
+   * Returns a policy which keeps the on screen holders plus {@code extra} off screen ones.
+   *
+   * @param extra
+   *   the number of off screen holders to keep
+   *
+   * @return the eviction policy
+   */
+  @NonNull
+  public static EvictionPolicy visibleWindowPolicy(final int extra) {
+    if (extra < 0) {
+      throw new IllegalArgumentException("extra < 0");
+    }
+    return new EvictionPolicy() {
+      @Override
+      public int getCapacity(int visibleCount) {
+        return visibleCount + extra;
+      }
+    };
+  }
+
+  /**
+   * Returns the holder cached for the given header id and marks it as being on screen.
+   *
+   * @param headerId
+   *   the header id
+   *
+   * @return the cached holder, or null if there is none
+   */
+  @Nullable
+  public RecyclerView.ViewHolder get(long headerId) {
+    final int entry = getEntry(headerId);
+    return entry != NONE ? holders[entry] : null;
+  }
+
+  /**
+   * Caches a holder for the given header id and marks it as being on screen.
+   *
+   * @param headerId
+   *   the header id
+   * @param holder
+   *   the header view holder
+   */
+  public void put(long headerId, @NonNull RecyclerView.ViewHolder holder) {
+    putEntry(headerId, holder, HeaderController.DEFAULT_VIEW_TYPE);
+  }
+
+  /**
+   * Evicts the holders which exceed the capacity and starts a new frame. Holders that were not
+   * used during the next frame become eligible for eviction.
+   */
+  public void endFrame() {
+    final int capacity = policy.getCapacity(visibleCount);
+    // entries are kept in access order, so the ones used in this frame are at the end
+    while (size > capacity && frames[head] != frame) {
+      final int entry = head;
+      if (pool != null) {
+        pool.put(holders[entry], viewTypes[entry]);
+      }
+      remove(entry);
+      evictionCount++;
+    }
+
+    frame++;
+    visibleCount = 0;
+  }
+
+  /**
+   * Removes all cached holders.
+   */
+  public void clear() {
+    while (head != NONE) {
+      remove(head);
+    }
+    visibleCount = 0;
+  }
+
+  /**
+   * Removes the holders which were not used during the last frame, nor since. The removed holders
+   * are dropped rather than pooled.
+   */
+  void trim() {
+    while (head != NONE && frames[head] != frame && frames[head] != frame - 1) {
+      remove(head);
+    }
+  }
+
+  /**
+   * @return the number of cached holders
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the number of holders evicted since this cache was created
+   */
+  public int getEvictionCount() {
+    return evictionCount;
+  }
+
+  /**
+   * Returns the entry of the given header id and marks it as being on screen.
+   */
+  int getEntry(long headerId) {
+    final int entry = indexOf(headerId);
+    if (entry != NONE) {
+      touch(entry);
+    }
+    return entry;
+  }
+
+  /**
+   * Returns the entry of the given header id without marking it as being on screen.
+   */
+  int peekEntry(long headerId) {
+    return indexOf(headerId);
+  }
+
+  /**
+   * Sets the pool receiving the evicted holders, or null to drop them.
+   */
+  void setPool(@Nullable HeaderPool pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * Caches a holder which has yet to be bound and measured, and returns its entry.
+   */
+  int putEntry(long headerId, @NonNull RecyclerView.ViewHolder holder, int viewType) {
+    final int entry = put(headerId, holder, viewType);
+    touch(entry);
+    return entry;
+  }
+
+  /**
+   * Adds a holder which is not used in the current frame, such as a prefetched one. The entry is
+   * the most recently used one, but it doesn't count as visible in the frame.
+   */
+  int putUnusedEntry(long headerId, @NonNull RecyclerView.ViewHolder holder, int viewType) {
+    final int entry = put(headerId, holder, viewType);
+    if (entry != tail) {
+      unlink(entry);
+      link(entry);
+    }
+    return entry;
+  }
+
+  @NonNull
+  RecyclerView.ViewHolder getHolder(int entry) {
+    return holders[entry];
+  }
+
+  long getHeaderId(int entry) {
+    return keys[entry];
+  }
+
+  int getViewType(int entry) {
+    return viewTypes[entry];
+  }
+
+  /**
+   * @return true if the entry's holder was bound and has not been invalidated since
+   */
+  boolean isBound(int entry) {
+    return bound[entry];
+  }
+
+  /**
+   * @return true if the entry's holder was prefetched and has not been used since
+   */
+  boolean isPrefetched(int entry) {
+    return prefetched[entry];
+  }
+
+  void setPrefetched(int entry, boolean prefetched) {
+    this.prefetched[entry] = prefetched;
+  }
+
+  long getVersion(int entry) {
+    return versions[entry];
+  }
+
+  void setBound(int entry, long version, int position) {
+    bound[entry] = true;
+    versions[entry] = version;
+    positions[entry] = position;
+    clearPayloads(entry);
+    invalidateSnapshot(entry);
+  }
+
+  /**
+   * Queues a payload for the holder of the given header id, to be applied on its next use. The
+   * holder is fully rebound instead if the payload is null.
+   */
+  void addPayload(long headerId, @Nullable Object payload) {
+    final int entry = indexOf(headerId);
+    if (entry == NONE || !bound[entry]) {
+      return;
+    }
+    if (payload == null) {
+      bound[entry] = false;
+      return;
+    }
+
+    if (payloads[entry] == null) {
+      payloads[entry] = new ArrayList<>(2);
+    }
+    payloads[entry].add(payload);
+  }
+
+  /**
+   * @return true if payloads were queued for the entry's holder since it was last bound
+   */
+  boolean hasPayloads(int entry) {
+    return payloads[entry] != null && !payloads[entry].isEmpty();
+  }
+
+  @NonNull
+  List<Object> getPayloads(int entry) {
+    return payloads[entry];
+  }
+
+  /**
+   * Records that the queued payloads were applied to the entry's holder, and whether its view
+   * has to be measured again.
+   */
+  void setPartiallyBound(int entry, boolean remeasure) {
+    clearPayloads(entry);
+    if (remeasure) {
+      widthSpecs[entry] = NO_MEASURE_SPEC;
+      heightSpecs[entry] = NO_MEASURE_SPEC;
+    }
+    invalidateSnapshot(entry);
+  }
+
+  /**
+   * @return true if the entry's view was last measured with the given specs
+   */
+  boolean isMeasured(int entry, int widthSpec, int heightSpec) {
+    return widthSpecs[entry] == widthSpec && heightSpecs[entry] == heightSpec;
+  }
+
+  /**
+   * @return true if the entry's view was measured since its holder was last fully bound
+   */
+  boolean hasMeasureSpecs(int entry) {
+    return widthSpecs[entry] != NO_MEASURE_SPEC;
+  }
+
+  /**
+   * @return the width spec the entry's view was last measured with
+   */
+  int getWidthSpec(int entry) {
+    return widthSpecs[entry];
+  }
+
+  /**
+   * @return the height spec the entry's view was last measured with
+   */
+  int getHeightSpec(int entry) {
+    return heightSpecs[entry];
+  }
+
+  void setMeasured(int entry, int widthSpec, int heightSpec) {
+    widthSpecs[entry] = widthSpec;
+    heightSpecs[entry] = heightSpec;
+    invalidateSnapshot(entry);
+  }
+
+  /**
+   * @return the recorded rendering of the entry's view, or null if none was recorded
+   */
+  @Nullable
+  HeaderSnapshot getSnapshot(int entry) {
+    return snapshots[entry];
+  }
+
+  void setSnapshot(int entry, @Nullable HeaderSnapshot snapshot) {
+    snapshots[entry] = snapshot;
+  }
+
+  /**
+   * Drops the recorded renderings of all holders.
+   */
+  void clearSnapshots() {
+    Arrays.fill(snapshots, null);
+  }
+
+  /**
+   * Marks the holder of the given header id to be rebound on its next use.
+   */
+  void invalidate(long headerId) {
+    final int entry = indexOf(headerId);
+    if (entry != NONE) {
+      bound[entry] = false;
+    }
+  }
+
+  /**
+   * Marks all holders to be rebound on their next use.
+   */
+  void invalidateAll() {
+    for (int entry = head; entry != NONE; entry = next[entry]) {
+      bound[entry] = false;
+    }
+  }
+
+  /**
+   * Marks the holders bound with a position between start, inclusive, and end, exclusive, to be
+   * rebound on their next use.
+   */
+  void invalidatePositions(int start, int end) {
+    for (int entry = head; entry != NONE; entry = next[entry]) {
+      if (positions[entry] >= start && positions[entry] < end) {
+        bound[entry] = false;
+      }
+    }
+  }
+
+  /**
+   * Adds the given offset to the positions the holders were bound with, from the given position
+   * on, after items were inserted or removed.
+   */
+  void offsetPositions(int start, int offset) {
+    for (int entry = head; entry != NONE; entry = next[entry]) {
+      if (positions[entry] >= start) {
+        positions[entry] += offset;
+      }
+    }
+  }
+
+  @Nullable
+  View findHeaderViewUnder(float x, float y) {
+    for (int entry = tail; entry != NONE; entry = previous[entry]) {
+      final View child = holders[entry].itemView;
+      final float translationX = child.getTranslationX();
+      final float translationY = child.getTranslationY();
+
+      if (x >= child.getLeft() + translationX &&
+        x <= child.getRight() + translationX &&
+        y >= child.getTop() + translationY &&
+        y <= child.getBottom() + translationY) {
+        return child;
+      }
+    }
+
+    return null;
+  }
+
+  private void clearPayloads(int entry) {
+    if (payloads[entry] != null) {
+      payloads[entry].clear();
+    }
+  }
+
+  private void invalidateSnapshot(int entry) {
+    if (snapshots[entry] != null) {
+      snapshots[entry].invalidate();
+    }
+  }
+
+  private void touch(int entry) {
+    if (frames[entry] != frame) {
+      frames[entry] = frame;
+      visibleCount++;
+    }
+    if (entry != tail) {
+      unlink(entry);
+      link(entry);
+    }
+  }
+
+  private int put(long headerId, @NonNull RecyclerView.ViewHolder holder, int viewType) {
+    int entry = indexOf(headerId);
+    if (entry == NONE) {
+      entry = insert(headerId);
+    }
+    holders[entry] = holder;
+    viewTypes[entry] = viewType;
+    bound[entry] = false;
+    prefetched[entry] = false;
+    widthSpecs[entry] = NO_MEASURE_SPEC;
+    heightSpecs[entry] = NO_MEASURE_SPEC;
+    clearPayloads(entry);
+    invalidateSnapshot(entry);
+    return entry;
+  }
+
+  private int indexOf(long key) {
+    final int mask = table.length - 1;
+    for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+      final int entry = table[slot] - 1;
+      if (entry == NONE || keys[entry] == key) {
+        return entry;
+      }
+    }
+  }
+
+  private int insert(long key) {
+    final int entry;
+    if (free != NONE) {
+      entry = free;
+      free = next[entry];
+    } else {
+      if (allocated == keys.length) {
+        growEntries();
+      }
+      entry = allocated++;
+    }
+
+    keys[entry] = key;
+    frames[entry] = frame - 1;
+    link(entry);
+    size++;
+
+    if (size * 2 > table.length) {
+      rehash(table.length * 2);
+    } else {
+      place(entry);
+    }
+    return entry;
+  }
+
+  private void remove(int entry) {
+    final int mask = table.length - 1;
+    int slot = hash(keys[entry]) & mask;
+    while (table[slot] != entry + 1) {
+      slot = (slot + 1) & mask;
+    }
+
+    // shift the following entries of the probe sequence back into the freed slot
+    int gap = slot;
+    for (int i = (gap + 1) & mask; table[i] != 0; i = (i + 1) & mask) {
+      final int home = hash(keys[table[i] - 1]) & mask;
+      final boolean stays = gap <= i ? gap < home && home <= i : gap < home || home <= i;
+      if (!stays) {
+        table[gap] = table[i];
+        gap = i;
+      }
+    }
+    table[gap] = 0;
+
+    if (frames[entry] == frame) {
+      visibleCount--;
+    }
+    unlink(entry);
+    holders[entry] = null;
+    snapshots[entry] = null;
+    clearPayloads(entry);
+    next[entry] = free;
+    free = entry;
+    size--;
+  }
+
+  private void place(int entry) {
+    final int mask = table.length - 1;
+    int slot = hash(keys[entry]) & mask;
+    while (table[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    table[slot] = entry + 1;
+  }
+
+  private void rehash(int capacity) {
+    table = new int[capacity];
+    for (int entry = head; entry != NONE; entry = next[entry]) {
+      place(entry);
+    }
+  }
+
+  private void growEntries() {
+    final int capacity = keys.length * 2;
+    keys = Arrays.copyOf(keys, capacity);
+    holders = Arrays.copyOf(holders, capacity);
+    viewTypes = Arrays.copyOf(viewTypes, capacity);
+    frames = Arrays.copyOf(frames, capacity);
+    previous = Arrays.copyOf(previous, capacity);
+    next = Arrays.copyOf(next, capacity);
+    bound = Arrays.copyOf(bound, capacity);
+    prefetched = Arrays.copyOf(prefetched, capacity);
+    versions = Arrays.copyOf(versions, capacity);
+    positions = Arrays.copyOf(positions, capacity);
+    widthSpecs = Arrays.copyOf(widthSpecs, capacity);
+    heightSpecs = Arrays.copyOf(heightSpecs, capacity);
+    snapshots = Arrays.copyOf(snapshots, capacity);
+    payloads = Arrays.copyOf(payloads, capacity);
+  }
+
+  private void link(int entry) {
+    previous[entry] = tail;
+    next[entry] = NONE;
+    if (tail != NONE) {
+      next[tail] = entry;
+    } else {
+      head = entry;
+    }
+    tail = entry;
+  }
+
+  private void unlink(int entry) {
+    final int before = previous[entry];
+    final int after = next[entry];
+    if (before != NONE) {
+      next[before] = after;
+    } else {
+      head = after;
+    }
+    if (after != NONE) {
+      previous[after] = before;
+    } else {
+      tail = before;
+    }
+  }
+
+  private static int hash(long key) {
+    final int hash = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+    return hash ^ (hash >>> 16);
+  }
+}
@@ -0,0 +1,757 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import android.graphics.Canvas;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Creates, binds and measures the header views of one header level, keeping them in a
+ * {@link HeaderCache}.
+ * <p>
+ * A cached header is only rebound after it has been invalidated, or when its content version
+ * changed for adapters reporting one. A header is only measured again when it requested a layout
+ * or when the measure specs given by its parent and layout params changed.
+ * <p>
+ * When tracing is enabled, creating, binding, measuring and drawing the headers are emitted as
+ * trace sections named after the header level, e.g. {@code HeaderDecor:header:bind}.
+ * <p>
+ * When snapshots are enabled, a header's rendering is recorded the first time it is drawn and
+ * replayed afterwards, until the header is rebound or measured again.
+ * <p>
+ * When an executor is set, missing header view holders are created on it and handed to the cache
+ * on the main thread. Until then the header is reported as missing, and its space is held by a
+ * placeholder of the last measured or the estimated header height.
+ * <p>
+ * Holders evicted from the cache are kept in a {@link HeaderPool} by view type, and rebound to
+ * headers of the same view type instead of creating new holders for them.
+ * <p>
+ * Measured header heights are kept in {@link HeaderHeights}. Headers which are not cached are laid
+ * out with their known height, or with the height the adapter declares for their view type, until
+ * they are created. A measured height differing from it is reported so the items can be laid out
+ * again.
+ */
+abstract class HeaderController {
+  static final String LEVEL_HEADER = "header";
+  static final String LEVEL_SUB_HEADER = "subheader";
+  static final int DEFAULT_VIEW_TYPE = 0;
+  static final int NO_HEIGHT = -1;
+
+  private HeaderCache cache;
+  private HeaderPool pool = new HeaderPool();
+  private boolean sharedPool;
+  private HeaderMetrics metrics;
+
+  private boolean tracing;
+  private boolean snapshots;
+  private boolean prefetching;
+  // running average of the time taken to prefetch a header
+  private long prefetchNanos;
+
+  private Executor executor;
+  private Handler mainHandler;
+  // ids of the headers being created on the executor
+  private long[] pendingIds = new long[4];
+  private int pendingCount;
+  // bumped when the cache is cleared, so the holders created for the previous headers are dropped
+  private int generation;
+  private int lastHeight;
+  private boolean heightMismatch;
+  private HeaderHeights heights = new HeaderHeights();
+  private int layoutVersion;
+  private final String createSection;
+  private final String bindSection;
+  private final String measureSection;
+  private final String drawSection;
+
+  /**
+   * @param level
+   *   the name of the header level, used in trace sections
+   */
+  HeaderController(@NonNull HeaderCache cache, @NonNull String level) {
+    this.cache = cache;
+    cache.setPool(pool);
+    this.createSection = HeaderTrace.section(level, "create");
+    this.bindSection = HeaderTrace.section(level, "bind");
+    this.measureSection = HeaderTrace.section(level, "measure");
+    this.drawSection = HeaderTrace.section(level, "draw");
+  }
+
+  /**
+   * Creates a new header view holder of the given view type.
+   */
+  @NonNull
+  abstract RecyclerView.ViewHolder createHolder(@NonNull ViewGroup parent, int viewType);
+
+  /**
+   * Binds the header view holder to the header of the given position.
+   */
+  abstract void bindHolder(@NonNull RecyclerView.ViewHolder holder, int position);
+
+  /**
+   * Updates the header view holder with the given payloads.
+   *
+   * @return true if the header's size may have changed
+   */
+  boolean bindHolder(@NonNull RecyclerView.ViewHolder holder, int position, @NonNull List<Object> payloads) {
+    bindHolder(holder, position);
+    return true;
+  }
+
+  /**
+   * @return the view type of the header of the given position
+   */
+  int getViewType(int position) {
+    return DEFAULT_VIEW_TYPE;
+  }
+
+  /**
+   * @return the declared height of the headers of the given view type, or a negative value if
+   * they have to be measured
+   */
+  int getDeclaredHeight(int viewType) {
+    return NO_HEIGHT;
+  }
+
+  /**
+   * @return the height of headers which have yet to be created, if no header was measured yet
+   */
+  int getEstimatedHeight() {
+    return 0;
+  }
+
+  /**
+   * @return true if the adapter reports content versions for its headers
+   */
+  boolean hasContentVersions() {
+    return false;
+  }
+
+  /**
+   * @return the content version of the header of the given position
+   */
+  long getContentVersion(int position) {
+    return 0;
+  }
+
+  @NonNull
+  HeaderCache getCache() {
+    return cache;
+  }
+
+  void setCache(@NonNull HeaderCache cache) {
+    this.cache.clearSnapshots();
+    this.cache.setPool(null);
+    this.cache = cache;
+    cache.setPool(pool);
+  }
+
+  @NonNull
+  HeaderPool getPool() {
+    return pool;
+  }
+
+  /**
+   * Sets the pool receiving the evicted holders, or null to go back to a pool of its own.
+   */
+  void setPool(@Nullable HeaderPool pool) {
+    this.sharedPool = pool != null;
+    this.pool = pool != null ? pool : new HeaderPool();
+    cache.setPool(this.pool);
+  }
+
+  @NonNull
+  HeaderHeights getHeights() {
+    return heights;
+  }
+
+  void setHeights(@NonNull HeaderHeights heights) {
+    this.heights = heights;
+  }
+
+  /**
+   * Sets the version of the header layouts, the known heights being dropped when it changes.
+   */
+  void setLayoutVersion(int layoutVersion) {
+    this.layoutVersion = layoutVersion;
+  }
+
+  void setMetrics(@Nullable HeaderMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  void setTracing(boolean tracing) {
+    this.tracing = tracing;
+  }
+
+  /**
+   * Sets the executor creating header view holders, or null to create them on the main thread.
+   */
+  void setExecutor(@Nullable Executor executor) {
+    this.executor = executor;
+    if (executor != null && mainHandler == null) {
+      mainHandler = new Handler(Looper.getMainLooper());
+    }
+  }
+
+  /**
+   * @return the height to reserve for a header which is being created in the background
+   */
+  int getPlaceholderHeight() {
+    return lastHeight > 0 ? lastHeight : getEstimatedHeight();
+  }
+
+  void setPrefetching(boolean prefetching) {
+    this.prefetching = prefetching;
+  }
+
+  void setSnapshots(boolean snapshots) {
+    this.snapshots = snapshots;
+    if (!snapshots) {
+      cache.clearSnapshots();
+    }
+  }
+
+  /**
+   * Returns the header view holder for the given header id, creating, binding and measuring it
+   * as needed.
+   *
+   * @param parent
+   *   the list the header is shown in
+   * @param headerId
+   *   the header id
+   * @param position
+   *   an item position of the header's section
+   * @param checkVersion
+   *   true to rebind the header if its content version changed
+   *
+   * @return the header view holder, or null if it is being created in the background
+   */
+  @Nullable
+  RecyclerView.ViewHolder getHeader(@NonNull RecyclerView parent, long headerId, int position, boolean checkVersion) {
+    int entry = cache.getEntry(headerId);
+    if (entry == HeaderCache.NO_ENTRY) {
+      if (isPending(headerId)) {
+        // already reported as missing when its creation started
+        return null;
+      }
+      if (metrics != null) {
+        metrics.onCacheMiss();
+        if (prefetching) {
+          metrics.onPrefetchMiss();
+        }
+      }
+      final int viewType = getViewType(position);
+      final RecyclerView.ViewHolder pooled = pool.get(viewType);
+      if (pooled != null) {
+        entry = cache.putEntry(headerId, pooled, viewType);
+      } else {
+        if (executor != null) {
+          createAsync(parent, headerId, viewType);
+          return null;
+        }
+        entry = cache.putEntry(headerId, create(parent, viewType, tracing), viewType);
+        if (metrics != null) {
+          metrics.onCreate();
+        }
+      }
+    } else {
+      if (cache.isPrefetched(entry)) {
+        cache.setPrefetched(entry, false);
+        if (metrics != null) {
+          metrics.onPrefetchHit();
+        }
+      }
+      if (metrics != null) {
+        metrics.onCacheHit();
+      }
+    }
+
+    return update(parent, entry, position, checkVersion);
+  }
+
+  /**
+   * Returns the height to lay the items out with for the header of the given id. A header which is
+   * not cached is not created if its height is known or the adapter declares the height of its
+   * view type.
+   *
+   * @param parent
+   *   the list the header is shown in
+   * @param headerId
+   *   the header id
+   * @param position
+   *   an item position of the header's section
+   *
+   * @return the header height
+   */
+  int getLayoutHeight(@NonNull RecyclerView parent, long headerId, int position) {
+    if (cache.peekEntry(headerId) == HeaderCache.NO_ENTRY) {
+      final int knownHeight = getKnownHeight(parent, headerId);
+      if (knownHeight >= 0) {
+        return knownHeight;
+      }
+      final int declaredHeight = getDeclaredHeight(getViewType(position));
+      if (declaredHeight >= 0) {
+        return declaredHeight;
+      }
+    }
+
+    final RecyclerView.ViewHolder holder = getHeader(parent, headerId, position, true);
+    return holder != null ? holder.itemView.getHeight() : getPlaceholderHeight();
+  }
+
+  /**
+   * Returns whether a header was measured with a height other than the known or declared one
+   * since the last call, in which case the items should be laid out again.
+   */
+  boolean consumeHeightMismatch() {
+    final boolean mismatch = heightMismatch;
+    heightMismatch = false;
+    return mismatch;
+  }
+
+  /**
+   * Creates, binds and measures the header of the given id ahead of time, unless it is cached
+   * already or prefetching it is not expected to end before the deadline.
+   *
+   * @param parent
+   *   the list the header will be shown in
+   * @param headerId
+   *   the header id
+   * @param position
+   *   an item position of the header's section
+   * @param deadlineNanos
+   *   the {@link System#nanoTime()} by which the work must be done
+   *
+   * @return false if the header was not prefetched for lack of time
+   */
+  boolean prefetch(@NonNull RecyclerView parent, long headerId, int position, long deadlineNanos) {
+    if (cache.peekEntry(headerId) != HeaderCache.NO_ENTRY) {
+      return true;
+    }
+    final int viewType = getViewType(position);
+    final RecyclerView.ViewHolder pooled = pool.get(viewType);
+    if (pooled == null && executor != null) {
+      createAsync(parent, headerId, viewType);
+      return true;
+    }
+
+    final long start = System.nanoTime();
+    if (start + prefetchNanos > deadlineNanos) {
+      if (pooled != null) {
+        pool.put(pooled, viewType);
+      }
+      return false;
+    }
+
+    final int entry = cache.putUnusedEntry(headerId, pooled != null ? pooled : create(parent, viewType, tracing), viewType);
+    final RecyclerView.ViewHolder holder = cache.getHolder(entry);
+    bind(entry, holder, position);
+    measure(parent, entry, holder.itemView);
+    cache.setPrefetched(entry, true);
+    if (metrics != null) {
+      if (pooled == null) {
+        metrics.onCreate();
+      }
+      metrics.onPrefetch();
+    }
+
+    final long duration = System.nanoTime() - start;
+    prefetchNanos = prefetchNanos == 0 ? duration : (prefetchNanos * 3 + duration) / 4;
+    return true;
+  }
+
+  /**
+   * Creates, binds and measures the header of the given id ahead of its first use. Unlike
+   * {@link #getHeader}, the header doesn't count as on screen in the current frame, nor as a
+   * cache hit or miss.
+   *
+   * @param parent
+   *   the list the header will be shown in
+   * @param headerId
+   *   the header id
+   * @param position
+   *   an item position of the header's section
+   */
+  void prewarm(@NonNull RecyclerView parent, long headerId, int position) {
+    int entry = cache.peekEntry(headerId);
+    if (entry == HeaderCache.NO_ENTRY) {
+      final int viewType = getViewType(position);
+      final RecyclerView.ViewHolder pooled = pool.get(viewType);
+      if (pooled == null && executor != null) {
+        createAsync(parent, headerId, viewType);
+        return;
+      }
+
+      entry = cache.putUnusedEntry(headerId, pooled != null ? pooled : create(parent, viewType, tracing), viewType);
+      if (metrics != null && pooled == null) {
+        metrics.onCreate();
+      }
+    }
+    update(parent, entry, position, true);
+  }
+
+  /**
+   * Draws a header view returned by {@link #getHeader} at the current origin of the canvas.
+   */
+  void draw(@NonNull Canvas canvas, long headerId, @NonNull View header) {
+    if (tracing) {
+      HeaderTrace.begin(drawSection);
+    }
+    if (!snapshots || !drawSnapshot(canvas, headerId, header)) {
+      header.draw(canvas);
+    }
+    if (tracing) {
+      HeaderTrace.end();
+    }
+  }
+
+  /**
+   * Marks all cached headers to be rebound on their next use.
+   */
+  void invalidate() {
+    cache.invalidateAll();
+  }
+
+  /**
+   * Marks the cached header of the given id to be rebound on its next use.
+   */
+  void invalidate(long headerId) {
+    cache.invalidate(headerId);
+  }
+
+  /**
+   * Queues a payload to be applied to the cached header of the given id on its next use, or marks
+   * it to be fully rebound if the payload is null.
+   */
+  void notifyChanged(long headerId, @Nullable Object payload) {
+    cache.addPayload(headerId, payload);
+  }
+
+  /**
+   * Marks the cached headers of the items between start, inclusive, and end, exclusive, to be
+   * rebound on their next use: the headers of the sections of these items indexed so far in the
+   * given index, and the headers which were bound with one of these items.
+   */
+  void invalidateRange(@NonNull SectionIndex sections, int start, int end) {
+    final int count = sections.getSectionCount();
+    for (int section = sections.findSection(start); section < count && sections.getSectionStart(section) < end; section++) {
+      cache.invalidate(sections.getSectionId(section));
+    }
+    cache.invalidatePositions(start, end);
+  }
+
+  /**
+   * Shifts the positions the cached headers were bound with, after items were inserted or
+   * removed.
+   */
+  void offsetPositions(int start, int offset) {
+    cache.offsetPositions(start, offset);
+  }
+
+  void endFrame() {
+    if (metrics != null) {
+      final int evictionCount = cache.getEvictionCount();
+      cache.endFrame();
+      metrics.onEvictions(cache.getEvictionCount() - evictionCount);
+    } else {
+      cache.endFrame();
+    }
+  }
+
+  /**
+   * Drops the headers which are not on screen, and the pooled ones.
+   */
+  void trim() {
+    cache.trim();
+    pool.clear();
+  }
+
+  /**
+   * Drops the cached headers, and the pooled ones unless the pool is shared. Headers being created
+   * on the executor are dropped when they are done.
+   */
+  void clear() {
+    generation++;
+    pendingCount = 0;
+    cache.clear();
+    if (!sharedPool) {
+      pool.clear();
+    }
+  }
+
+  private boolean drawSnapshot(@NonNull Canvas canvas, long headerId, @NonNull View header) {
+    final int entry = cache.getEntry(headerId);
+    if (entry == HeaderCache.NO_ENTRY) {
+      return false;
+    }
+
+    HeaderSnapshot snapshot = cache.getSnapshot(entry);
+    if (snapshot == null) {
+      snapshot = new HeaderSnapshot();
+      cache.setSnapshot(entry, snapshot);
+    }
+    if (!snapshot.isValid() && !snapshot.record(header)) {
+      return false;
+    }
+
+    snapshot.draw(canvas);
+    return true;
+  }
+
+  /**
+   * Creates the holder of the given header id on the executor, unless it is being created already.
+   */
+  private void createAsync(@NonNull final RecyclerView parent, final long headerId, final int viewType) {
+    if (isPending(headerId)) {
+      return;
+    }
+    if (pendingCount == pendingIds.length) {
+      pendingIds = Arrays.copyOf(pendingIds, pendingCount * 2);
+    }
+    pendingIds[pendingCount++] = headerId;
+
+    // read on the main thread, the fields may change while the holder is created
+    final int generation = this.generation;
+    final boolean tracing = this.tracing;
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        final RecyclerView.ViewHolder holder;
+        try {
+          holder = create(parent, viewType, tracing);
+        } catch (final RuntimeException e) {
+          // fail on the main thread, like creating the holder there would have
+          mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+              throw e;
+            }
+          });
+          return;
+        }
+
+        mainHandler.post(new Runnable() {
+          @Override
+          public void run() {
+            onCreated(parent, headerId, holder, viewType, generation);
+          }
+        });
+      }
+    });
+  }
+
+  private void onCreated(@NonNull RecyclerView parent, long headerId, @NonNull RecyclerView.ViewHolder holder, int viewType, int generation) {
+    if (generation != this.generation) {
+      // the cache was cleared since, and the list may be gone
+      return;
+    }
+    for (int i = 0; i < pendingCount; i++) {
+      if (pendingIds[i] == headerId) {
+        pendingIds[i] = pendingIds[--pendingCount];
+        break;
+      }
+    }
+
+    if (metrics != null) {
+      metrics.onCreate();
+    }
+    if (cache.peekEntry(headerId) != HeaderCache.NO_ENTRY) {
+      // a pooled holder was used for the header in the meantime
+      pool.put(holder, viewType);
+      return;
+    }
+    // not on screen until the next frame asks for it
+    cache.putUnusedEntry(headerId, holder, viewType);
+    // lay the items out again with the real header height
+    parent.invalidateItemDecorations();
+  }
+
+  /**
+   * Binds the holder of the given entry if it was invalidated, or updates it with its payloads,
+   * and measures it if needed.
+   */
+  @NonNull
+  private RecyclerView.ViewHolder update(@NonNull RecyclerView parent, int entry, int position, boolean checkVersion) {
+    final RecyclerView.ViewHolder holder = cache.getHolder(entry);
+    if (!cache.isBound(entry)) {
+      bind(entry, holder, position);
+    } else if (checkVersion && hasContentVersions() && getContentVersion(position) != cache.getVersion(entry)) {
+      bind(entry, holder, position);
+    } else if (cache.hasPayloads(entry)) {
+      bindPartially(parent, entry, holder, position);
+    }
+
+    measure(parent, entry, holder.itemView);
+    return holder;
+  }
+
+  private boolean isPending(long headerId) {
+    for (int i = 0; i < pendingCount; i++) {
+      if (pendingIds[i] == headerId) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @NonNull
+  private RecyclerView.ViewHolder create(@NonNull ViewGroup parent, int viewType, boolean tracing) {
+    if (tracing) {
+      HeaderTrace.begin(createSection);
+    }
+    final RecyclerView.ViewHolder holder = createHolder(parent, viewType);
+    if (tracing) {
+      HeaderTrace.end();
+    }
+    return holder;
+  }
+
+  private void bind(int entry, @NonNull RecyclerView.ViewHolder holder, int position) {
+    if (tracing) {
+      HeaderTrace.begin(bindSection);
+    }
+    bindHolder(holder, position);
+    if (tracing) {
+      HeaderTrace.end();
+    }
+    if (metrics != null) {
+      metrics.onBind();
+    }
+    cache.setBound(entry, hasContentVersions() ? getContentVersion(position) : 0, position);
+  }
+
+  /**
+   * @return the known height of the header of the given id in the given list, or a negative value
+   */
+  private int getKnownHeight(@NonNull RecyclerView parent, long headerId) {
+    keyHeights(parent);
+    return heights.get(headerId);
+  }
+
+  /**
+   * Keys the known heights by the width of the given list. Until the list is laid out and has a
+   * width, the heights keep their key, so the ones restored from a saved state are used for the
+   * first layout rather than dropped.
+   *
+   * @return false if the list has no width yet
+   */
+  private boolean keyHeights(@NonNull RecyclerView parent) {
+    final int width = parent.getWidth();
+    if (width == 0) {
+      return false;
+    }
+    heights.setKey(width, layoutVersion);
+    return true;
+  }
+
+  private void bindPartially(@NonNull RecyclerView parent, int entry, @NonNull RecyclerView.ViewHolder holder, int position) {
+    if (tracing) {
+      HeaderTrace.begin(bindSection);
+    }
+    final boolean remeasure = bindHolder(holder, position, cache.getPayloads(entry));
+    if (tracing) {
+      HeaderTrace.end();
+    }
+    if (metrics != null) {
+      metrics.onBind();
+    }
+    cache.setPartiallyBound(entry, remeasure);
+
+    final View header = holder.itemView;
+    if (!remeasure && header.isLayoutRequested() && cache.hasMeasureSpecs(entry)) {
+      remeasure(parent, entry, header);
+    }
+  }
+
+  /**
+   * Settles a layout request of a partially bound header, measuring it again with the specs it
+   * was last measured with. The items only need to be laid out again if its height changed.
+   */
+  private void remeasure(@NonNull RecyclerView parent, int entry, @NonNull View header) {
+    final int height = header.getHeight();
+    if (tracing) {
+      HeaderTrace.begin(measureSection);
+    }
+    header.measure(cache.getWidthSpec(entry), cache.getHeightSpec(entry));
+    header.layout(0, 0, header.getMeasuredWidth(), header.getMeasuredHeight());
+    if (tracing) {
+      HeaderTrace.end();
+    }
+    lastHeight = header.getMeasuredHeight();
+
+    if (lastHeight != height) {
+      heightMismatch = true;
+      if (keyHeights(parent)) {
+        heights.put(cache.getHeaderId(entry), lastHeight);
+      }
+    }
+    if (metrics != null) {
+      metrics.onMeasure();
+    }
+  }
+
+  private void measure(@NonNull RecyclerView parent, int entry, @NonNull View header) {
+    int widthSpec = View.MeasureSpec.makeMeasureSpec(parent.getWidth(), View.MeasureSpec.EXACTLY);
+    int heightSpec = View.MeasureSpec.makeMeasureSpec(parent.getHeight(), View.MeasureSpec.UNSPECIFIED);
+
+    int childWidth = ViewGroup.getChildMeasureSpec(widthSpec, parent.getPaddingLeft() + parent.getPaddingRight(), header.getLayoutParams().width);
+    int childHeight = ViewGroup.getChildMeasureSpec(heightSpec, parent.getPaddingTop() + parent.getPaddingBottom(), header.getLayoutParams().height);
+
+    if (cache.isMeasured(entry, childWidth, childHeight) && !header.isLayoutRequested()) {
+      return;
+    }
+
+    if (tracing) {
+      HeaderTrace.begin(measureSection);
+    }
+    header.measure(childWidth, childHeight);
+    header.layout(0, 0, header.getMeasuredWidth(), header.getMeasuredHeight());
+    if (tracing) {
+      HeaderTrace.end();
+    }
+    cache.setMeasured(entry, childWidth, childHeight);
+    lastHeight = header.getMeasuredHeight();
+
+    final long headerId = cache.getHeaderId(entry);
+    int expectedHeight = getKnownHeight(parent, headerId);
+    if (expectedHeight < 0) {
+      expectedHeight = getDeclaredHeight(cache.getViewType(entry));
+    }
+    if (expectedHeight >= 0 && expectedHeight != lastHeight) {
+      heightMismatch = true;
+    }
+    // heights measured before the list has a width don't belong to the restored ones
+    if (keyHeights(parent)) {
+      heights.put(headerId, lastHeight);
+    }
+    if (metrics != null) {
+      metrics.onMeasure();
+    }
+  }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.AtomicFile;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The measured heights of the headers of a decoration, by header id.
+ * <p>
+ * Decorations lay the items out with the known height of a header until the header is created,
+ * so after a configuration change or a process restart the first layout doesn't have to create
+ * and measure every header. Headers are still created when they are drawn, and the items are laid
+ * out again if a header turns out to have another height.
+ * <p>
+ * Heights are only valid for the list width they were measured with and the layout version set
+ * on the decoration, and are dropped when either changes. Only the heights of the most recently
+ * measured headers are kept, the oldest ones being dropped first. They can be saved to the
+ * instance state as a {@link Parcelable}, or to a file with {@link #writeTo(File)}:
+ * <pre>
+ * outState.putParcelable("headerHeights", decor.getHeaderHeights());
+ * ...
+ * decor.setHeaderHeights(savedState.&lt;HeaderHeights&gt;getParcelable("headerHeights"));
+ * </pre>
+ */
+public final class HeaderHeights implements Parcelable {
+  static final int NO_HEIGHT = -1;
+
+  // 12 bytes per height, so the parcel stays around 3 KB in the saved instance state
+  private static final int MAX_SIZE = 256;
+  private static final int FILE_FORMAT = 1;
+
+  private int width;
+  private int layoutVersion;
+
+  // open addressing table of header ids and heights + 1, zero marks an empty slot
+  private long[] keys = new long[32];
+  private int[] values = new int[32];
+  private int size;
+  // the header ids in the order they were added, starting at oldest
+  private final long[] order = new long[MAX_SIZE];
+  private int oldest;
+
+  public HeaderHeights() {
+  }
+
+  /**
+   * @return the number of known header heights
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Drops all the known header heights.
+   */
+  public void clear() {
+    Arrays.fill(values, 0);
+    size = 0;
+    oldest = 0;
+  }
+
+  /**
+   * Writes the header heights to the given file, replacing it atomically.
+   *
+   * @param file
+   *   the file to write
+   *
+   * @throws IOException
+   *   if the file can't be written
+   */
+  public void writeTo(@NonNull File file) throws IOException {
+    final AtomicFile atomicFile = new AtomicFile(file);
+    final FileOutputStream stream = atomicFile.startWrite();
+    try {
+      final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+      out.writeInt(FILE_FORMAT);
+      out.writeInt(width);
+      out.writeInt(layoutVersion);
+      out.writeInt(size);
+      for (int i = 0; i < size; i++) {
+        final long headerId = order[(oldest + i) % MAX_SIZE];
+        out.writeLong(headerId);
+        out.writeInt(get(headerId));
+      }
+      out.flush();
+    } catch (IOException e) {
+      atomicFile.failWrite(stream);
+      throw e;
+    }
+    atomicFile.finishWrite(stream);
+  }
+
+  /**
+   * Reads header heights written with {@link #writeTo(File)}.
+   *
+   * @param file
+   *   the file to read
+   *
+   * @return the header heights, empty if the file doesn't exist or has an unknown format
+   *
+   * @throws IOException
+   *   if the file can't be read
+   */
+  @NonNull
+  public static HeaderHeights readFrom(@NonNull File file) throws IOException {
+    final HeaderHeights heights = new HeaderHeights();
+    final FileInputStream stream;
+    try {
+      stream = new AtomicFile(file).openRead();
+    } catch (FileNotFoundException e) {
+      return heights;
+    }
+
+    try {
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+      if (in.readInt() != FILE_FORMAT) {
+        return heights;
+      }
+      heights.width = in.readInt();
+      heights.layoutVersion = in.readInt();
+      final int size = in.readInt();
+      for (int i = 0; i < size; i++) {
+        final long headerId = in.readLong();
+        heights.put(headerId, in.readInt());
+      }
+    } finally {
+      stream.close();
+    }
+    return heights;
+  }
+
+  /**
+   * @return true if the heights were measured with the given list width and layout version
+   */
+  boolean isKeyedBy(int width, int layoutVersion) {
+    return this.width == width && this.layoutVersion == layoutVersion;
+  }
+
+  /**
+   * Drops the known heights if they were not measured with the given list width and layout
+   * version.
+   */
+  void setKey(int width, int layoutVersion) {
+    if (!isKeyedBy(width, layoutVersion)) {
+      clear();
+      this.width = width;
+      this.layoutVersion = layoutVersion;
+    }
+  }
+
+  /**
+   * @return the height of the header of the given id, or {@link #NO_HEIGHT} if it is unknown
+   */
+  int get(long headerId) {
+    final int mask = keys.length - 1;
+    for (int slot = hash(headerId) & mask; values[slot] != 0; slot = (slot + 1) & mask) {
+      if (keys[slot] == headerId) {
+        return values[slot] - 1;
+      }
+    }
+    return NO_HEIGHT;
+  }
+
+  /**
+   * Records the height of the header of the given id, dropping the oldest recorded height if
+   * there are too many.
+   */
+  void put(long headerId, int height) {
+    final int mask = keys.length - 1;
+    int slot = hash(headerId) & mask;
+    while (values[slot] != 0) {
+      if (keys[slot] == headerId) {
+        values[slot] = height + 1;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    if (size == MAX_SIZE) {
+      remove(order[oldest]);
+      order[oldest] = headerId;
+      oldest = (oldest + 1) % MAX_SIZE;
+      // the removal may have moved the entries following the empty slot
+      slot = hash(headerId) & mask;
+      while (values[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+    } else {
+      order[(oldest + size) % MAX_SIZE] = headerId;
+    }
+
+    keys[slot] = headerId;
+    values[slot] = height + 1;
+    size++;
+    if (size * 2 > keys.length) {
+      rehash(keys.length * 2);
+    }
+  }
+
+  private void remove(long headerId) {
+    final int mask = keys.length - 1;
+    int hole = hash(headerId) & mask;
+    while (keys[hole] != headerId || values[hole] == 0) {
+      hole = (hole + 1) & mask;
+    }
+    values[hole] = 0;
+    size--;
+
+    // shift back the entries which can't be found past the hole anymore
+    for (int slot = (hole + 1) & mask; values[slot] != 0; slot = (slot + 1) & mask) {
+      final int home = hash(keys[slot]) & mask;
+      if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+        keys[hole] = keys[slot];
+        values[hole] = values[slot];
+        values[slot] = 0;
+        hole = slot;
+      }
+    }
+  }
+
+  private void rehash(int capacity) {
+    final long[] oldKeys = keys;
+    final int[] oldValues = values;
+    keys = new long[capacity];
+    values = new int[capacity];
+    final int mask = capacity - 1;
+    for (int i = 0; i < oldValues.length; i++) {
+      if (oldValues[i] != 0) {
+        int slot = hash(oldKeys[i]) & mask;
+        while (values[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        keys[slot] = oldKeys[i];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  private static int hash(long key) {
+    final int hash = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+    return hash ^ (hash >>> 16);
+  }
+
+  @Override
+  public int describeContents() {
+    return 0;
+  }
+
+  @Override
+  public void writeToParcel(Parcel dest, int flags) {
+    dest.writeInt(width);
+    dest.writeInt(layoutVersion);
+    dest.writeInt(size);
+    for (int i = 0; i < size; i++) {
+      final long headerId = order[(oldest + i) % MAX_SIZE];
+      dest.writeLong(headerId);
+      dest.writeInt(get(headerId));
+    }
+  }
+
+  public static final Creator<HeaderHeights> CREATOR = new Creator<HeaderHeights>() {
+    @Override
+    public HeaderHeights createFromParcel(Parcel source) {
+      final HeaderHeights heights = new HeaderHeights();
+      heights.width = source.readInt();
+      heights.layoutVersion = source.readInt();
+      final int size = source.readInt();
+      for (int i = 0; i < size; i++) {
+        final long headerId = source.readLong();
+        heights.put(headerId, source.readInt());
+      }
+      return heights;
+    }
+
+    @Override
+    public HeaderHeights[] newArray(int size) {
+      return new HeaderHeights[size];
+    }
+  };
+}
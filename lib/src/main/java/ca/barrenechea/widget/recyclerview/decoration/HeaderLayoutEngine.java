@@ -0,0 +1,234 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import java.util.Arrays;
+
+/**
+ * Computes where the sticky headers of a frame are drawn from a {@link ChildSnapshot}.
+ * <p>
+ * The engine doesn't depend on the Android framework: header heights are asked through
+ * {@link HeaderHeights}, and the result is a list of draw operations, in drawing order, stored
+ * in reusable primitive arrays. This keeps the positioning math of the decorations testable and
+ * benchmarkable on a plain JVM.
+ */
+final class HeaderLayoutEngine {
+  static final int NO_HEADER_ID = -1;
+
+  static final int LEVEL_HEADER = 0;
+  static final int LEVEL_SUB_HEADER = 1;
+
+  /**
+   * Provides the heights of the header views. Only asked for the headers the layout depends on.
+   */
+  interface HeaderHeights {
+    int getHeaderHeight(int position);
+
+    int getSubHeaderHeight(int position);
+  }
+
+  int drawCount;
+  int[] drawLevels = new int[0];
+  // the item position the drawn header is bound to
+  int[] drawPositions = new int[0];
+  // the layout position of the child the header is drawn for
+  int[] drawChildren = new int[0];
+  int[] drawLefts = new int[0];
+  int[] drawTops = new int[0];
+  long[] drawIds = new long[0];
+  // true if the header is pinned at the top of the list rather than drawn along its section
+  boolean[] drawPinned = new boolean[0];
+
+  /**
+   * Lays out the headers of a {@link StickyHeaderDecoration}. Expects the snapshot tops and lefts
+   * to be the decorated bounds of the children.
+   */
+  void layoutSticky(ChildSnapshot children, HeaderHeights heights) {
+    drawCount = 0;
+    long previousHeaderId = -1;
+
+    for (int layoutPos = 0; layoutPos < children.count; layoutPos++) {
+      final int adapterPos = children.positions[layoutPos];
+      final long headerId = children.headerIds[layoutPos];
+
+      if (adapterPos != ChildSnapshot.NO_POSITION && headerId != NO_HEADER_ID && headerId != previousHeaderId) {
+        previousHeaderId = headerId;
+        final int top = getStickyHeaderTop(children, heights, children.tops[layoutPos], layoutPos);
+        add(LEVEL_HEADER, adapterPos, layoutPos, children.lefts[layoutPos], top, headerId, layoutPos == 0);
+      }
+    }
+  }
+
+  private int getStickyHeaderTop(ChildSnapshot children, HeaderHeights heights, int top, int layoutPos) {
+    if (layoutPos == 0) {
+      // find next view with header and compute the offscreen push if needed
+      final int next = children.findHeaderChange(layoutPos, children.headerIds[layoutPos]);
+      if (next != ChildSnapshot.NONE) {
+        final int offset = children.tops[next] - heights.getHeaderHeight(children.positions[next]);
+        if (offset < 0) {
+          return offset;
+        }
+      }
+
+      top = Math.max(0, top);
+    }
+
+    return top;
+  }
+
+  /**
+   * Lays out the headers and sub-headers of a {@link DoubleHeaderDecoration}. Expects the snapshot
+   * tops to be the animated tops of the children.
+   */
+  void layoutDouble(ChildSnapshot children, HeaderHeights heights, boolean renderInline, int betweenHeadersMargin) {
+    drawCount = 0;
+    final int count = children.count;
+    final int firstVisible = findFirstVisibleChild(children);
+
+    boolean headerDrawn = false;
+    for (int layoutPos = 0; layoutPos < count; layoutPos++) {
+      final int adapterPos = children.positions[layoutPos];
+      if (!isVisible(children, layoutPos) || adapterPos == ChildSnapshot.NO_POSITION) {
+        continue;
+      }
+
+      final boolean hasHeader = children.headerStarts[layoutPos];
+      final boolean hasSubHeader = children.subHeaderStarts[layoutPos] && children.subHeaderIds[layoutPos] != NO_HEADER_ID;
+      if (headerDrawn && !hasSubHeader && !hasHeader) {
+        continue;
+      }
+
+      final int left = children.lefts[layoutPos];
+      final long headerId = children.headerIds[layoutPos];
+      final long subHeaderId = children.subHeaderIds[layoutPos];
+      final int headerHeight = heights.getHeaderHeight(adapterPos);
+      int subHeaderHeight = heights.getSubHeaderHeight(adapterPos);
+
+      if (hasSubHeader) {
+        final int top = getSubHeaderTop(children, heights, layoutPos, headerId, subHeaderId, headerHeight, subHeaderHeight, renderInline);
+        add(LEVEL_SUB_HEADER, adapterPos, layoutPos, left, top, subHeaderId, layoutPos == firstVisible);
+      }
+      // draw part of previous subheader which should be visible
+      else if (adapterPos > 0 && !hasHeader) {
+        final long previousSubHeaderId = children.previousSubHeaderIds[layoutPos];
+        subHeaderHeight = heights.getSubHeaderHeight(adapterPos - 1);
+        final int top = getSubHeaderTop(children, heights, layoutPos, headerId, previousSubHeaderId, headerHeight, subHeaderHeight, renderInline);
+        add(LEVEL_SUB_HEADER, adapterPos - 1, layoutPos, left, top, previousSubHeaderId, layoutPos == firstVisible);
+      }
+
+      if (!headerDrawn || hasHeader) {
+        final boolean firstValidChild = layoutPos <= firstVisible;
+        int top = getHeaderTop(children, heights, layoutPos, headerId, headerHeight, subHeaderHeight, firstValidChild, renderInline, betweenHeadersMargin);
+        add(LEVEL_HEADER, adapterPos, layoutPos, left, top, headerId, firstValidChild);
+
+        // draw part of previous header which should be visible
+        if (betweenHeadersMargin != 0 && top <= -betweenHeadersMargin && adapterPos > 0 && hasHeader) {
+          final long previousHeaderId = children.previousHeaderIds[layoutPos];
+          final int previousHeaderHeight = heights.getHeaderHeight(adapterPos - 1);
+          top = getHeaderTop(children, heights, layoutPos, previousHeaderId, previousHeaderHeight, subHeaderHeight, firstValidChild, renderInline, betweenHeadersMargin);
+          top += betweenHeadersMargin * 2;
+          add(LEVEL_HEADER, adapterPos - 1, layoutPos, left, top, previousHeaderId, false);
+        }
+      }
+
+      headerDrawn = true;
+    }
+  }
+
+  private int getSubHeaderTop(ChildSnapshot children, HeaderHeights heights, int layoutPos, long currentHeaderId, long currentSubHeaderId,
+                              int headerHeight, int subHeaderHeight, boolean renderInline) {
+    final int subHeaderLayoutHeight = renderInline ? 0 : subHeaderHeight;
+    final int top = children.tops[layoutPos] - subHeaderLayoutHeight;
+
+    // find next view with sub-header and compute the offscreen push if needed
+    final int next = children.findSubHeaderChange(layoutPos, currentSubHeaderId);
+    if (next != ChildSnapshot.NONE) {
+      final int adapterPosHere = children.positions[next];
+      int headersHeight = subHeaderLayoutHeight + heights.getSubHeaderHeight(adapterPosHere);
+      if (children.headerIds[next] != currentHeaderId) {
+        headersHeight += heights.getHeaderHeight(adapterPosHere);
+      }
+
+      final int offset = children.tops[next] - headersHeight;
+      if (offset < headerHeight) {
+        return offset;
+      }
+    }
+
+    return Math.max(headerHeight, top);
+  }
+
+  private int getHeaderTop(ChildSnapshot children, HeaderHeights heights, int layoutPos, long currentId, int headerHeight, int subHeaderHeight,
+                           boolean firstValidChild, boolean renderInline, int betweenHeadersMargin) {
+    final int subHeaderLayoutHeight = renderInline ? 0 : subHeaderHeight;
+    int top = children.tops[layoutPos] - headerHeight - subHeaderLayoutHeight;
+    if (firstValidChild) {
+      // find next view with header and compute the offscreen push if needed
+      final int next = children.findHeaderChange(layoutPos, currentId);
+      if (next != ChildSnapshot.NONE) {
+        final int headersHeight = headerHeight + heights.getHeaderHeight(children.positions[next]);
+        final int offset = children.tops[next] - headersHeight - subHeaderLayoutHeight;
+
+        if (offset < betweenHeadersMargin) {
+          return offset - betweenHeadersMargin;
+        }
+      }
+
+      top = Math.max(0, top);
+    }
+
+    return top;
+  }
+
+  private static boolean isVisible(ChildSnapshot children, int layoutPos) {
+    return children.tops[layoutPos] > -children.heights[layoutPos];
+  }
+
+  /**
+   * @return the layout position of the first visible child with an adapter position, or the
+   * number of children if there is none
+   */
+  private static int findFirstVisibleChild(ChildSnapshot children) {
+    for (int layoutPos = 0; layoutPos < children.count; layoutPos++) {
+      if (children.isValid(layoutPos) && isVisible(children, layoutPos)) {
+        return layoutPos;
+      }
+    }
+    return children.count;
+  }
+
+  private void add(int level, int position, int child, int left, int top, long id, boolean pinned) {
+    if (drawCount == drawLevels.length) {
+      final int capacity = Math.max(8, drawCount * 2);
+      drawLevels = Arrays.copyOf(drawLevels, capacity);
+      drawPositions = Arrays.copyOf(drawPositions, capacity);
+      drawChildren = Arrays.copyOf(drawChildren, capacity);
+      drawLefts = Arrays.copyOf(drawLefts, capacity);
+      drawTops = Arrays.copyOf(drawTops, capacity);
+      drawIds = Arrays.copyOf(drawIds, capacity);
+      drawPinned = Arrays.copyOf(drawPinned, capacity);
+    }
+    drawLevels[drawCount] = level;
+    drawPositions[drawCount] = position;
+    drawChildren[drawCount] = child;
+    drawLefts[drawCount] = left;
+    drawTops[drawCount] = top;
+    drawIds[drawCount] = id;
+    drawPinned[drawCount] = pinned;
+    drawCount++;
+  }
+}
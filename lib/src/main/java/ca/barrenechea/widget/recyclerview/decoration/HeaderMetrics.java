@@ -0,0 +1,297 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Counters of the work done by header decorations, collected once set on a decoration with
+ * {@code setMetrics}. Decorations without metrics don't count or time anything.
+ * <p>
+ * The same metrics may be shared by several decorations. Metrics are updated on the main thread
+ * and should be read there, either while scrolling from a {@link FrameListener} called after each
+ * frame, or by taking a {@link #snapshot()} and calling {@link #reset()} at the end of a session.
+ */
+public final class HeaderMetrics {
+  /**
+   * Observes the metrics frame by frame.
+   */
+  public interface FrameListener {
+    /**
+     * Called on the main thread each time a decoration using the metrics drew a frame.
+     *
+     * @param metrics
+     *   the metrics, including the work done for the frame
+     */
+    void onFrame(@NonNull HeaderMetrics metrics);
+  }
+
+  private FrameListener frameListener;
+
+  private long createCount;
+  private long bindCount;
+  private long measureCount;
+  private long cacheHitCount;
+  private long cacheMissCount;
+  private long evictionCount;
+  private long prefetchCount;
+  private long prefetchHitCount;
+  private long prefetchMissCount;
+
+  private long itemOffsetsCount;
+  private long itemOffsetsNanos;
+  private long maxItemOffsetsNanos;
+  private long drawCount;
+  private long drawNanos;
+  private long maxDrawNanos;
+
+  /**
+   * Sets the listener called after each frame drawn by a decoration using these metrics.
+   *
+   * @param frameListener
+   *   the listener, or null to remove it
+   */
+  public void setFrameListener(@Nullable FrameListener frameListener) {
+    this.frameListener = frameListener;
+  }
+
+  /**
+   * @return a copy of the current values, without the frame listener
+   */
+  @NonNull
+  public HeaderMetrics snapshot() {
+    final HeaderMetrics snapshot = new HeaderMetrics();
+    snapshot.createCount = createCount;
+    snapshot.bindCount = bindCount;
+    snapshot.measureCount = measureCount;
+    snapshot.cacheHitCount = cacheHitCount;
+    snapshot.cacheMissCount = cacheMissCount;
+    snapshot.evictionCount = evictionCount;
+    snapshot.prefetchCount = prefetchCount;
+    snapshot.prefetchHitCount = prefetchHitCount;
+    snapshot.prefetchMissCount = prefetchMissCount;
+    snapshot.itemOffsetsCount = itemOffsetsCount;
+    snapshot.itemOffsetsNanos = itemOffsetsNanos;
+    snapshot.maxItemOffsetsNanos = maxItemOffsetsNanos;
+    snapshot.drawCount = drawCount;
+    snapshot.drawNanos = drawNanos;
+    snapshot.maxDrawNanos = maxDrawNanos;
+    return snapshot;
+  }
+
+  /**
+   * Sets all values back to zero.
+   */
+  public void reset() {
+    createCount = 0;
+    bindCount = 0;
+    measureCount = 0;
+    cacheHitCount = 0;
+    cacheMissCount = 0;
+    evictionCount = 0;
+    prefetchCount = 0;
+    prefetchHitCount = 0;
+    prefetchMissCount = 0;
+    itemOffsetsCount = 0;
+    itemOffsetsNanos = 0;
+    maxItemOffsetsNanos = 0;
+    drawCount = 0;
+    drawNanos = 0;
+    maxDrawNanos = 0;
+  }
+
+  /**
+   * @return the number of header view holders created
+   */
+  public long getCreateCount() {
+    return createCount;
+  }
+
+  /**
+   * @return the number of header view holders bound
+   */
+  public long getBindCount() {
+    return bindCount;
+  }
+
+  /**
+   * @return the number of header views measured
+   */
+  public long getMeasureCount() {
+    return measureCount;
+  }
+
+  /**
+   * @return the number of header lookups served from a header cache
+   */
+  public long getCacheHitCount() {
+    return cacheHitCount;
+  }
+
+  /**
+   * @return the number of header lookups not served from a header cache, which either reused a
+   *   pooled header view holder or created one
+   */
+  public long getCacheMissCount() {
+    return cacheMissCount;
+  }
+
+  /**
+   * @return the number of header view holders evicted from a header cache
+   */
+  public long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /**
+   * @return the number of header view holders created ahead of time by prefetching
+   */
+  public long getPrefetchCount() {
+    return prefetchCount;
+  }
+
+  /**
+   * @return the number of prefetched header view holders which were used afterwards
+   */
+  public long getPrefetchHitCount() {
+    return prefetchHitCount;
+  }
+
+  /**
+   * @return the number of header lookups, to lay the items out or to draw them, which reused a
+   * pooled header view holder or created one while prefetching was enabled, because prefetching
+   * did not provide the header in time
+   */
+  public long getPrefetchMissCount() {
+    return prefetchMissCount;
+  }
+
+  /**
+   * @return the number of {@code getItemOffsets} calls
+   */
+  public long getItemOffsetsCount() {
+    return itemOffsetsCount;
+  }
+
+  /**
+   * @return the total time spent in {@code getItemOffsets}, in nanoseconds
+   */
+  public long getItemOffsetsNanos() {
+    return itemOffsetsNanos;
+  }
+
+  /**
+   * @return the longest time spent in a single {@code getItemOffsets} call, in nanoseconds
+   */
+  public long getMaxItemOffsetsNanos() {
+    return maxItemOffsetsNanos;
+  }
+
+  /**
+   * @return the number of {@code onDrawOver} calls
+   */
+  public long getDrawCount() {
+    return drawCount;
+  }
+
+  /**
+   * @return the total time spent in {@code onDrawOver}, in nanoseconds
+   */
+  public long getDrawNanos() {
+    return drawNanos;
+  }
+
+  /**
+   * @return the longest time spent in a single {@code onDrawOver} call, in nanoseconds
+   */
+  public long getMaxDrawNanos() {
+    return maxDrawNanos;
+  }
+
+  void onCreate() {
+    createCount++;
+  }
+
+  void onBind() {
+    bindCount++;
+  }
+
+  void onMeasure() {
+    measureCount++;
+  }
+
+  void onCacheHit() {
+    cacheHitCount++;
+  }
+
+  void onCacheMiss() {
+    cacheMissCount++;
+  }
+
+  void onEvictions(int count) {
+    evictionCount += count;
+  }
+
+  void onPrefetch() {
+    prefetchCount++;
+  }
+
+  void onPrefetchHit() {
+    prefetchHitCount++;
+  }
+
+  void onPrefetchMiss() {
+    prefetchMissCount++;
+  }
+
+  void onItemOffsets(long nanos) {
+    itemOffsetsCount++;
+    itemOffsetsNanos += nanos;
+    if (nanos > maxItemOffsetsNanos) {
+      maxItemOffsetsNanos = nanos;
+    }
+  }
+
+  void onDraw(long nanos) {
+    drawCount++;
+    drawNanos += nanos;
+    if (nanos > maxDrawNanos) {
+      maxDrawNanos = nanos;
+    }
+    if (frameListener != null) {
+      frameListener.onFrame(this);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "HeaderMetrics{" +
+      "creates=" + createCount +
+      ", binds=" + bindCount +
+      ", measures=" + measureCount +
+      ", cacheHits=" + cacheHitCount +
+      ", cacheMisses=" + cacheMissCount +
+      ", evictions=" + evictionCount +
+      ", prefetches=" + prefetchCount +
+      ", prefetchHits=" + prefetchHitCount +
+      ", prefetchMisses=" + prefetchMissCount +
+      ", itemOffsets=" + itemOffsetsCount + " in " + itemOffsetsNanos + "ns (max " + maxItemOffsetsNanos + "ns)" +
+      ", draws=" + drawCount + " in " + drawNanos + "ns (max " + maxDrawNanos + "ns)" +
+      '}';
+  }
+}
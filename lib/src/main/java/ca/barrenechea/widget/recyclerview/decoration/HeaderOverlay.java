@@ -0,0 +1,128 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Shows the pinned headers of a decoration as real children of a container laid over the list,
+ * instead of drawing them on the list's canvas. A header is attached once when it gets pinned and
+ * only its translation changes while the list scrolls, so it keeps its own render node, ripples
+ * and animations, and redrawing it doesn't redraw the list.
+ * <p>
+ * Each pinned header has a slot, the header of a higher slot being shown above the ones of the
+ * lower slots. Slots which are not shown during a frame are emptied at the end of the frame.
+ * <p>
+ * The container is expected to have the bounds of the list, and no padding.
+ */
+final class HeaderOverlay {
+  private final ViewGroup container;
+  private final View[] headers;
+  private final boolean[] shown;
+
+  HeaderOverlay(@NonNull ViewGroup container, int slotCount) {
+    this.container = container;
+    this.headers = new View[slotCount];
+    this.shown = new boolean[slotCount];
+  }
+
+  @NonNull
+  ViewGroup getContainer() {
+    return container;
+  }
+
+  /**
+   * Starts a frame. The slots which are not shown until {@link #endFrame()} are emptied.
+   */
+  void beginFrame() {
+    Arrays.fill(shown, false);
+  }
+
+  void endFrame() {
+    for (int slot = 0; slot < headers.length; slot++) {
+      if (!shown[slot]) {
+        hide(slot);
+      }
+    }
+  }
+
+  /**
+   * Shows the given header view in the container at the given offset, in place of the header
+   * shown so far in the given slot.
+   */
+  void show(int slot, @NonNull View header, int left, int top) {
+    if (headers[slot] != header) {
+      hide(slot);
+      hide(header);
+      final ViewParent parent = header.getParent();
+      if (parent instanceof ViewGroup) {
+        ((ViewGroup) parent).removeView(header);
+      }
+      container.addView(header, getChildIndex(slot));
+      headers[slot] = header;
+    }
+    header.setTranslationX(left);
+    header.setTranslationY(top);
+    shown[slot] = true;
+  }
+
+  /**
+   * Removes the given header view from the container if it is shown in a slot.
+   */
+  void hide(@NonNull View header) {
+    for (int slot = 0; slot < headers.length; slot++) {
+      if (headers[slot] == header) {
+        hide(slot);
+      }
+    }
+  }
+
+  /**
+   * Removes the header views shown in the container, if any.
+   */
+  void hide() {
+    for (int slot = 0; slot < headers.length; slot++) {
+      hide(slot);
+    }
+  }
+
+  void hide(int slot) {
+    if (headers[slot] != null) {
+      container.removeView(headers[slot]);
+      headers[slot] = null;
+    }
+  }
+
+  /**
+   * @return the index to add the header of the given slot at, below the headers of the higher
+   * slots
+   */
+  private int getChildIndex(int slot) {
+    for (int above = slot + 1; above < headers.length; above++) {
+      if (headers[above] != null) {
+        return container.indexOfChild(headers[above]);
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+
+/**
+ * Keeps the header view holders evicted from a {@link HeaderCache} by header view type, so they
+ * can be rebound to other headers of the same type instead of creating new ones, like
+ * RecyclerView's recycled view pool does for items.
+ * <p>
+ * Every header level of a decoration has its own pool by default. A pool may be shared by the
+ * decorations of several lists, e.g. the pages of a ViewPager, as long as their adapters create
+ * the same kind of holder for a given view type. Pooled headers are measured again for the list
+ * they are reused in. Pools must only be used from the main thread.
+ */
+public final class HeaderPool {
+  static final int DEFAULT_MAX_PER_TYPE = 5;
+  private static final int DEFAULT_MAX_SIZE = 20;
+
+  private final SparseArray<ArrayList<RecyclerView.ViewHolder>> scrap = new SparseArray<>();
+  private final int maxSize;
+  private int size;
+
+  /**
+   * Creates a pool keeping up to 5 holders per view type, and up to 20 holders in total.
+   */
+  public HeaderPool() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  /**
+   * Creates a pool keeping up to 5 holders per view type.
+   *
+   * @param maxSize
+   *   the maximum number of holders kept across all view types
+   */
+  public HeaderPool(int maxSize) {
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("maxSize < 0");
+    }
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * @return the maximum number of holders kept across all view types
+   */
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * @return the number of holders currently kept
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Drops all the pooled holders.
+   */
+  public void clear() {
+    scrap.clear();
+    size = 0;
+  }
+
+  /**
+   * @return a pooled holder of the given view type, or null if there is none
+   */
+  @Nullable
+  RecyclerView.ViewHolder get(int viewType) {
+    final ArrayList<RecyclerView.ViewHolder> holders = scrap.get(viewType);
+    if (holders == null || holders.isEmpty()) {
+      return null;
+    }
+    size--;
+    return holders.remove(holders.size() - 1);
+  }
+
+  /**
+   * Pools a holder of the given view type, unless the pool or the pool of that type is full.
+   */
+  void put(@NonNull RecyclerView.ViewHolder holder, int viewType) {
+    if (size >= maxSize) {
+      return;
+    }
+    ArrayList<RecyclerView.ViewHolder> holders = scrap.get(viewType);
+    if (holders == null) {
+      holders = new ArrayList<>(DEFAULT_MAX_PER_TYPE);
+      scrap.put(viewType, holders);
+    }
+    if (holders.size() < DEFAULT_MAX_PER_TYPE) {
+      holders.add(holder);
+      size++;
+    }
+  }
+}
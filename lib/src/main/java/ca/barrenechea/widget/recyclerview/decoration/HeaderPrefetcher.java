@@ -0,0 +1,144 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import android.view.Display;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prefetches the headers of the sections about to scroll into view in the gap between frames,
+ * like RecyclerView prefetches its items.
+ * <p>
+ * The scroll direction is derived from the children of consecutive frames. After a frame is
+ * drawn, a task is posted to the list which prepares the headers of the next sections in the
+ * scroll direction, one section at a time, until the next frame is due.
+ */
+abstract class HeaderPrefetcher implements Runnable {
+  private static final long DEFAULT_FRAME_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1) / 60;
+
+  private int sectionCount;
+  private long frameIntervalNanos;
+
+  private RecyclerView parent;
+  private int position = RecyclerView.NO_POSITION;
+  private int direction;
+  private long deadlineNanos;
+
+  private int lastFirstPosition = RecyclerView.NO_POSITION;
+  private int lastFirstTop;
+
+  /**
+   * Prefetches the headers of the first section boundary at the given position or beyond it in
+   * the given direction.
+   *
+   * @param direction
+   *   1 when scrolling towards the end of the list, -1 otherwise
+   *
+   * @return the position to continue from, or {@link RecyclerView#NO_POSITION} to stop
+   */
+  abstract int prefetch(@NonNull RecyclerView parent, int position, int direction, long deadlineNanos);
+
+  /**
+   * Sets the number of sections to prefetch ahead of the visible ones, 0 disables prefetching.
+   */
+  void setSectionCount(int sectionCount) {
+    this.sectionCount = sectionCount;
+    if (sectionCount == 0) {
+      cancel();
+    }
+  }
+
+  /**
+   * Schedules prefetching after a frame whose children were gathered in the given snapshot.
+   */
+  void onFrame(@NonNull RecyclerView parent, @NonNull ChildSnapshot children) {
+    if (sectionCount == 0) {
+      return;
+    }
+
+    int first = 0;
+    while (first < children.count && !children.isValid(first)) {
+      first++;
+    }
+    int last = children.count - 1;
+    while (last >= first && !children.isValid(last)) {
+      last--;
+    }
+    if (first > last) {
+      return;
+    }
+
+    final int firstPosition = children.positions[first];
+    final int firstTop = children.tops[first];
+    final int direction;
+    if (lastFirstPosition == RecyclerView.NO_POSITION || firstPosition == lastFirstPosition && firstTop == lastFirstTop) {
+      direction = 0;
+    } else if (firstPosition > lastFirstPosition || firstPosition == lastFirstPosition && firstTop < lastFirstTop) {
+      direction = 1;
+    } else {
+      direction = -1;
+    }
+    lastFirstPosition = firstPosition;
+    lastFirstTop = firstTop;
+    if (direction == 0) {
+      return;
+    }
+
+    this.position = direction > 0 ? children.positions[last] + 1 : firstPosition - 1;
+    this.direction = direction;
+    this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(parent.getDrawingTime()) + getFrameIntervalNanos(parent);
+    if (this.parent == null) {
+      this.parent = parent;
+      parent.post(this);
+    }
+  }
+
+  void cancel() {
+    if (parent != null) {
+      parent.removeCallbacks(this);
+      parent = null;
+    }
+    lastFirstPosition = RecyclerView.NO_POSITION;
+  }
+
+  @Override
+  public void run() {
+    final RecyclerView parent = this.parent;
+    this.parent = null;
+    if (parent == null || parent.getAdapter() == null) {
+      return;
+    }
+
+    int position = this.position;
+    for (int i = 0; i < sectionCount && position >= 0 && System.nanoTime() < deadlineNanos; i++) {
+      position = prefetch(parent, position, direction, deadlineNanos);
+    }
+  }
+
+  private long getFrameIntervalNanos(@NonNull RecyclerView parent) {
+    if (frameIntervalNanos == 0) {
+      final Display display = parent.getDisplay();
+      final float refreshRate = display != null ? display.getRefreshRate() : 0;
+      frameIntervalNanos = refreshRate >= 30 ? (long) (TimeUnit.SECONDS.toNanos(1) / refreshRate) : DEFAULT_FRAME_INTERVAL_NANOS;
+    }
+    return frameIntervalNanos;
+  }
+}
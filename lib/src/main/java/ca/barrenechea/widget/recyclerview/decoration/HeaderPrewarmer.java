@@ -0,0 +1,145 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.view.MotionEvent;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Prepares the headers of the sections following the visible ones while the main thread is idle,
+ * one section per idle period, so the first fling doesn't have to create them. Stops as soon as
+ * the list is touched, and gives up if the list isn't laid out after a number of idle periods.
+ */
+abstract class HeaderPrewarmer implements MessageQueue.IdleHandler, RecyclerView.OnItemTouchListener {
+  private static final int MAX_LAYOUT_WAITS = 32;
+
+  // unregisters outside of the list's touch dispatch, which doesn't expect listeners to change
+  private final Runnable cancelRunnable = new Runnable() {
+    @Override
+    public void run() {
+      cancel();
+    }
+  };
+
+  private RecyclerView parent;
+  private MessageQueue queue;
+  private int position;
+  private int remaining;
+  private int layoutWaits;
+  private boolean touched;
+
+  /**
+   * Prepares the headers of the first section boundary at or after the given position.
+   *
+   * @return the position to continue from, or {@link RecyclerView#NO_POSITION} if there are no
+   * more sections
+   */
+  abstract int prewarm(@NonNull RecyclerView parent, int position);
+
+  /**
+   * Starts preparing the headers of the given number of sections following the visible ones.
+   * Must be called on the main thread.
+   */
+  void start(@NonNull RecyclerView parent, int count) {
+    cancel();
+    if (count <= 0) {
+      return;
+    }
+
+    this.parent = parent;
+    this.queue = Looper.myQueue();
+    this.position = RecyclerView.NO_POSITION;
+    this.remaining = count;
+    this.layoutWaits = 0;
+    this.touched = false;
+    parent.addOnItemTouchListener(this);
+    queue.addIdleHandler(this);
+  }
+
+  void cancel() {
+    if (parent != null) {
+      parent.removeOnItemTouchListener(this);
+      parent.removeCallbacks(cancelRunnable);
+      queue.removeIdleHandler(this);
+      parent = null;
+      queue = null;
+    }
+  }
+
+  @Override
+  public boolean queueIdle() {
+    final RecyclerView parent = this.parent;
+    if (parent == null) {
+      return false;
+    }
+    if (touched) {
+      cancel();
+      return false;
+    }
+    // wait for the list to be laid out, but not forever for a list which stays empty
+    if (parent.getAdapter() == null || parent.getWidth() == 0 || parent.getChildCount() == 0) {
+      if (++layoutWaits < MAX_LAYOUT_WAITS) {
+        return true;
+      }
+      cancel();
+      return false;
+    }
+
+    if (position == RecyclerView.NO_POSITION) {
+      position = getPositionAfterChildren(parent);
+    }
+    if (position != RecyclerView.NO_POSITION) {
+      position = prewarm(parent, position);
+      remaining--;
+    }
+
+    if (remaining <= 0 || position == RecyclerView.NO_POSITION) {
+      cancel();
+      return false;
+    }
+    return true;
+  }
+
+  @Override
+  public boolean onInterceptTouchEvent(@NonNull RecyclerView rv, @NonNull MotionEvent e) {
+    if (!touched) {
+      touched = true;
+      rv.post(cancelRunnable);
+    }
+    return false;
+  }
+
+  @Override
+  public void onTouchEvent(@NonNull RecyclerView rv, @NonNull MotionEvent e) {
+  }
+
+  @Override
+  public void onRequestDisallowInterceptTouchEvent(boolean disallowIntercept) {
+  }
+
+  private static int getPositionAfterChildren(@NonNull RecyclerView parent) {
+    int last = RecyclerView.NO_POSITION;
+    for (int i = parent.getChildCount() - 1; i >= 0 && last == RecyclerView.NO_POSITION; i--) {
+      last = parent.getChildAdapterPosition(parent.getChildAt(i));
+    }
+    return last != RecyclerView.NO_POSITION ? last + 1 : RecyclerView.NO_POSITION;
+  }
+}
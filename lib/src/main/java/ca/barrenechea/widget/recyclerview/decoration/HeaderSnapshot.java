@@ -0,0 +1,98 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Picture;
+import android.os.Build;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+
+/**
+ * The rendered output of a header view, replayed instead of drawing the view tree again.
+ * <p>
+ * On API 23 and above the header is recorded into a {@link Picture}, which hardware accelerated
+ * canvases replay as a display list. Older API levels can't draw pictures on hardware canvases, so
+ * the header is rendered into a bitmap instead.
+ */
+final class HeaderSnapshot {
+  private static final boolean USE_PICTURE = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+
+  private Picture picture;
+  private Bitmap bitmap;
+  private boolean valid;
+
+  /**
+   * @return true if the snapshot was recorded and has not been invalidated since
+   */
+  boolean isValid() {
+    return valid;
+  }
+
+  /**
+   * Marks the snapshot to be recorded again before it is drawn next.
+   */
+  void invalidate() {
+    valid = false;
+  }
+
+  /**
+   * Records the current rendering of the given laid out view.
+   *
+   * @return false if the view is empty and there is nothing to record
+   */
+  boolean record(@NonNull View view) {
+    final int width = view.getWidth();
+    final int height = view.getHeight();
+    if (width <= 0 || height <= 0) {
+      return false;
+    }
+
+    if (USE_PICTURE) {
+      if (picture == null) {
+        picture = new Picture();
+      }
+      final Canvas canvas = picture.beginRecording(width, height);
+      view.draw(canvas);
+      picture.endRecording();
+    } else {
+      if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+        bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+      } else {
+        bitmap.eraseColor(Color.TRANSPARENT);
+      }
+      view.draw(new Canvas(bitmap));
+    }
+
+    valid = true;
+    return true;
+  }
+
+  /**
+   * Draws the recorded rendering at the current origin of the canvas.
+   */
+  void draw(@NonNull Canvas canvas) {
+    if (USE_PICTURE) {
+      canvas.drawPicture(picture);
+    } else {
+      canvas.drawBitmap(bitmap, 0, 0, null);
+    }
+  }
+}
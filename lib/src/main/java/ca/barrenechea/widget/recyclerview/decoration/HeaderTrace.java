@@ -0,0 +1,54 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import android.os.Build;
+import android.os.Trace;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Emits the trace sections of the header decorations, shown in systrace and Perfetto captures.
+ * Sections are only emitted on API 18 and above.
+ */
+final class HeaderTrace {
+  static final String ITEM_OFFSETS = "HeaderDecor:getItemOffsets";
+  static final String DRAW_OVER = "HeaderDecor:onDrawOver";
+
+  private HeaderTrace() {
+  }
+
+  /**
+   * @return the name of a section of work on the headers of the given level
+   */
+  @NonNull
+  static String section(@NonNull String level, @NonNull String work) {
+    return "HeaderDecor:" + level + ":" + work;
+  }
+
+  static void begin(@NonNull String section) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+      Trace.beginSection(section);
+    }
+  }
+
+  static void end() {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+      Trace.endSection();
+    }
+  }
+}
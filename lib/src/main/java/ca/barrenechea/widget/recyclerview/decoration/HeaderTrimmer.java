@@ -0,0 +1,120 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Releases the headers of a decoration when they are no longer needed: the off-screen headers
+ * when the system reports memory pressure at or above the trim level, and all of them when the
+ * list is detached from its window.
+ * <p>
+ * Memory pressure is only listened to while the list is attached, and the list is forgotten once
+ * it is detached, so neither the application context nor an adapter outliving the list keeps a
+ * detached list's decoration, and the context of its headers, alive.
+ */
+abstract class HeaderTrimmer implements ComponentCallbacks2, View.OnAttachStateChangeListener {
+  static final int DEFAULT_TRIM_LEVEL = TRIM_MEMORY_RUNNING_LOW;
+
+  private int trimLevel = DEFAULT_TRIM_LEVEL;
+  private RecyclerView parent;
+  private Context context;
+
+  /**
+   * Drops the headers which are not on screen.
+   */
+  abstract void trim();
+
+  /**
+   * Drops all the headers, and stops observing the list's adapter, the list being detached.
+   */
+  abstract void release();
+
+  void setTrimLevel(int trimLevel) {
+    this.trimLevel = trimLevel;
+  }
+
+  /**
+   * Starts following the given list, the list being attached to its window. Does nothing if the
+   * list is followed already. A list is followed again after being detached once it is next
+   * drawn.
+   */
+  void attach(@NonNull RecyclerView parent) {
+    if (parent == this.parent) {
+      return;
+    }
+    if (this.parent != null) {
+      this.parent.removeOnAttachStateChangeListener(this);
+      unregister();
+    }
+
+    this.parent = parent;
+    parent.addOnAttachStateChangeListener(this);
+    register(parent);
+  }
+
+  @Override
+  public void onViewAttachedToWindow(View v) {
+    register(v);
+  }
+
+  @Override
+  public void onViewDetachedFromWindow(View v) {
+    unregister();
+    if (parent != null) {
+      parent.removeOnAttachStateChangeListener(this);
+      parent = null;
+    }
+    release();
+  }
+
+  @Override
+  public void onTrimMemory(int level) {
+    if (level >= trimLevel) {
+      trim();
+    }
+  }
+
+  @Override
+  public void onLowMemory() {
+    trim();
+  }
+
+  @Override
+  public void onConfigurationChanged(Configuration newConfig) {
+  }
+
+  private void register(@NonNull View view) {
+    if (context == null) {
+      context = view.getContext().getApplicationContext();
+      context.registerComponentCallbacks(this);
+    }
+  }
+
+  private void unregister() {
+    if (context != null) {
+      context.unregisterComponentCallbacks(this);
+      context = null;
+    }
+  }
+}
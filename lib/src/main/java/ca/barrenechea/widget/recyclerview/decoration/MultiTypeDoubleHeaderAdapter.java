@@ -0,0 +1,58 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * An optional interface for a {@link DoubleHeaderAdapter} whose headers and sub-headers use
+ * several view types.
+ *
+ * @param <H>
+ *   the header view holder
+ * @param <S>
+ *   the sub-header view holder
+ *
+ * @see MultiTypeHeaderAdapter
+ */
+public interface MultiTypeDoubleHeaderAdapter<H extends RecyclerView.ViewHolder, S extends RecyclerView.ViewHolder> extends MultiTypeHeaderAdapter<H> {
+  /**
+   * Returns the view type of the sub-header for the item at the given position.
+   *
+   * @param position
+   *   the item position
+   *
+   * @return the sub-header view type
+   */
+  int getSubHeaderViewType(int position);
+
+  /**
+   * Creates a new sub-header ViewHolder of the given view type.
+   *
+   * @param parent
+   *   the sub-header's view parent
+   * @param viewType
+   *   the sub-header view type
+   *
+   * @return a view holder for the created view
+   */
+  @NonNull
+  S onCreateSubHeaderViewHolder(@NonNull ViewGroup parent, int viewType);
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * An optional interface for a {@link StickyHeaderAdapter} or a {@link DoubleHeaderAdapter} whose
+ * headers use several view types.
+ * <p>
+ * Header view holders evicted from the header cache are pooled by view type and rebound to other
+ * headers of the same view type. Adapters implementing this interface have their header view
+ * holders created by {@link #onCreateHeaderViewHolder(ViewGroup, int)} instead of the adapter's
+ * own create method.
+ *
+ * @param <T>
+ *   the header view holder
+ */
+public interface MultiTypeHeaderAdapter<T extends RecyclerView.ViewHolder> {
+  /**
+   * Returns the view type of the header for the item at the given position.
+   *
+   * @param position
+   *   the item position
+   *
+   * @return the header view type
+   */
+  int getHeaderViewType(int position);
+
+  /**
+   * Creates a new header ViewHolder of the given view type. Called on a background thread when
+   * the adapter implements {@link AsyncHeaderAdapter} and the decoration was given an executor.
+   *
+   * @param parent
+   *   the header's view parent
+   * @param viewType
+   *   the header view type
+   *
+   * @return a view holder for the created view
+   */
+  @NonNull
+  T onCreateHeaderViewHolder(@NonNull ViewGroup parent, int viewType);
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.List;
+
+/**
+ * An optional interface for a {@link DoubleHeaderAdapter} which can update part of a header or a
+ * sub-header.
+ *
+ * @param <H>
+ *   the header view holder
+ * @param <S>
+ *   the sub-header view holder
+ *
+ * @see PayloadHeaderAdapter
+ */
+public interface PayloadDoubleHeaderAdapter<H extends RecyclerView.ViewHolder, S extends RecyclerView.ViewHolder> extends PayloadHeaderAdapter<H> {
+  /**
+   * Updates the parts of the sub-header view described by the given payloads.
+   *
+   * @param viewHolder
+   *   the sub-header view holder
+   * @param position
+   *   the sub-header's item position
+   * @param payloads
+   *   the payloads notified since the sub-header was last bound, in order
+   *
+   * @return true if the size of the sub-header may have changed and it needs to be measured again
+   */
+  boolean onBindSubHeaderViewHolder(@NonNull S viewHolder, int position, @NonNull List<Object> payloads);
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.List;
+
+/**
+ * An optional interface for a {@link StickyHeaderAdapter} or a {@link DoubleHeaderAdapter} which
+ * can update part of a header, like RecyclerView's
+ * {@code onBindViewHolder(holder, position, payloads)}.
+ * <p>
+ * Payloads are given to the decoration with {@code notifyHeaderChanged(headerId, payload)}. A
+ * cached header with pending payloads is updated with
+ * {@link #onBindHeaderViewHolder(RecyclerView.ViewHolder, int, List)} on its next use, and only
+ * measured again if the adapter reports that its size may have changed, or if the update requested
+ * a layout of the header view. The items are laid out again only if the header's height changed.
+ * Headers which were not bound yet, or were invalidated, are fully bound as usual.
+ *
+ * @param <T>
+ *   the header view holder
+ */
+public interface PayloadHeaderAdapter<T extends RecyclerView.ViewHolder> {
+  /**
+   * Updates the parts of the header view described by the given payloads.
+   *
+   * @param viewHolder
+   *   the header view holder
+   * @param position
+   *   the header's item position
+   * @param payloads
+   *   the payloads notified since the header was last bound, in order
+   *
+   * @return true if the size of the header may have changed and it needs to be measured again
+   */
+  boolean onBindHeaderViewHolder(@NonNull T viewHolder, int position, @NonNull List<Object> payloads);
+}
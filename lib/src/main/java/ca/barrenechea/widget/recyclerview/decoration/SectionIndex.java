@@ -0,0 +1,527 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * A run-length index of the header ids of a list. Each section is a run of consecutive positions
+ * sharing the same header id, stored as its first position, its end and its id, so the index
+ * grows with the number of sections rather than the number of items.
+ * <p>
+ * The index is either copied from a {@link SectionSource} which knows the sections, or built
+ * lazily from an {@link IdSource}, one section at a time around the positions queried. Positions
+ * close to the end of a known section are indexed from there; the section of a position far from
+ * any known section is found by galloping backward and forward from the position, so jumping deep
+ * into a long list only asks for a number of ids logarithmic in the length of the section. This
+ * assumes the positions sharing a header id are consecutive, except for positions without a
+ * header, which may be scattered through the list: the bounds of their runs are read one position
+ * after the other instead. A {@link RangeIdSource} is asked for the ids of batches of positions. Lookups of the section that was used last, or the one
+ * following it, take constant time; other lookups use a binary search over the sections.
+ */
+final class SectionIndex {
+  /**
+   * Provides the header id of a position.
+   */
+  interface IdSource {
+    long getId(int position);
+  }
+
+  /**
+   * Provides the header ids of ranges of positions.
+   */
+  interface RangeIdSource extends IdSource {
+    void getIds(int start, int count, @NonNull long[] ids);
+  }
+
+  /**
+   * Provides the sections of a list, in the order of their first positions.
+   */
+  interface SectionSource {
+    int getSectionCount();
+
+    int getSectionStart(int section);
+
+    long getSectionId(int section);
+  }
+
+  private static final int ID_BATCH_SIZE = 64;
+
+  private final IdSource idSource;
+  private final RangeIdSource rangeIdSource;
+  private final SectionSource sectionSource;
+  private final long[] idBatch;
+  private final long[] scanBatch;
+
+  private int[] starts = new int[16];
+  private int[] ends = new int[16];
+  private long[] ids = new long[16];
+  private int count;
+
+  private boolean loaded;
+  private int itemCount;
+  private int lastSection;
+
+  SectionIndex(@NonNull IdSource idSource) {
+    this.idSource = idSource;
+    this.rangeIdSource = idSource instanceof RangeIdSource ? (RangeIdSource) idSource : null;
+    this.sectionSource = null;
+    this.idBatch = new long[ID_BATCH_SIZE + 1];
+    this.scanBatch = rangeIdSource != null ? new long[ID_BATCH_SIZE] : null;
+  }
+
+  SectionIndex(@NonNull SectionSource sectionSource) {
+    this.idSource = null;
+    this.rangeIdSource = null;
+    this.sectionSource = sectionSource;
+    this.idBatch = null;
+    this.scanBatch = null;
+  }
+
+  /**
+   * Creates the index of the header sections of an adapter, using the sections it reports if it
+   * implements {@link SectionedHeaderAdapter}, or the given id source otherwise. The ids are
+   * asked for in batches if the adapter implements {@link BulkHeaderAdapter}.
+   */
+  @NonNull
+  static SectionIndex forHeaders(@NonNull Object adapter, @NonNull final IdSource idSource) {
+    if (adapter instanceof SectionedHeaderAdapter) {
+      final SectionedHeaderAdapter sectioned = (SectionedHeaderAdapter) adapter;
+      return new SectionIndex(new SectionSource() {
+        @Override
+        public int getSectionCount() {
+          return sectioned.getHeaderSectionCount();
+        }
+
+        @Override
+        public int getSectionStart(int section) {
+          return sectioned.getHeaderSectionStart(section);
+        }
+
+        @Override
+        public long getSectionId(int section) {
+          return sectioned.getHeaderSectionId(section);
+        }
+      });
+    }
+    if (adapter instanceof BulkHeaderAdapter) {
+      final BulkHeaderAdapter bulk = (BulkHeaderAdapter) adapter;
+      return new SectionIndex(new RangeIdSource() {
+        @Override
+        public long getId(int position) {
+          return idSource.getId(position);
+        }
+
+        @Override
+        public void getIds(int start, int count, @NonNull long[] ids) {
+          bulk.getHeaderIds(start, count, ids);
+        }
+      });
+    }
+    return new SectionIndex(idSource);
+  }
+
+  /**
+   * Creates the index of the sub-header sections of an adapter, using the sections it reports if
+   * it implements {@link SectionedDoubleHeaderAdapter}, or the given id source otherwise. The ids
+   * are asked for in batches if the adapter implements {@link BulkDoubleHeaderAdapter}.
+   */
+  @NonNull
+  static SectionIndex forSubHeaders(@NonNull Object adapter, @NonNull final IdSource idSource) {
+    if (adapter instanceof SectionedDoubleHeaderAdapter) {
+      final SectionedDoubleHeaderAdapter sectioned = (SectionedDoubleHeaderAdapter) adapter;
+      return new SectionIndex(new SectionSource() {
+        @Override
+        public int getSectionCount() {
+          return sectioned.getSubHeaderSectionCount();
+        }
+
+        @Override
+        public int getSectionStart(int section) {
+          return sectioned.getSubHeaderSectionStart(section);
+        }
+
+        @Override
+        public long getSectionId(int section) {
+          return sectioned.getSubHeaderSectionId(section);
+        }
+      });
+    }
+    if (adapter instanceof BulkDoubleHeaderAdapter) {
+      final BulkDoubleHeaderAdapter bulk = (BulkDoubleHeaderAdapter) adapter;
+      return new SectionIndex(new RangeIdSource() {
+        @Override
+        public long getId(int position) {
+          return idSource.getId(position);
+        }
+
+        @Override
+        public void getIds(int start, int count, @NonNull long[] ids) {
+          bulk.getSubHeaderIds(start, count, ids);
+        }
+      });
+    }
+    return new SectionIndex(idSource);
+  }
+
+  /**
+   * Updates the number of items of the list, dropping the sections reaching the end of the
+   * shorter list if it has changed.
+   */
+  void setItemCount(int itemCount) {
+    if (this.itemCount != itemCount) {
+      invalidateFrom(Math.min(this.itemCount, itemCount));
+      this.itemCount = itemCount;
+    }
+  }
+
+  /**
+   * Drops the index. It will be rebuilt on the next query.
+   */
+  void invalidate() {
+    count = 0;
+    loaded = false;
+    lastSection = 0;
+  }
+
+  /**
+   * Drops the sections reaching the given position or beyond it. They will be indexed again on
+   * the next query. Indexes copied from a {@link SectionSource} are dropped entirely.
+   */
+  void invalidateFrom(int position) {
+    if (sectionSource != null) {
+      invalidate();
+      return;
+    }
+
+    count = findSection(position - 1);
+    lastSection = Math.max(Math.min(lastSection, count - 1), 0);
+  }
+
+  /**
+   * Drops the sections touching the items between start and end, inclusive, and moves the
+   * sections following them by the given offset, after these items were changed, or items were
+   * inserted or removed there. Indexes copied from a {@link SectionSource} are dropped entirely.
+   */
+  void invalidateRange(int start, int end, int offset) {
+    if (sectionSource != null) {
+      invalidate();
+      return;
+    }
+
+    final int first = findSection(start - 1);
+    int last = first;
+    while (last < count && starts[last] <= end) {
+      last++;
+    }
+    final int removed = last - first;
+    for (int section = last; section < count; section++) {
+      starts[section - removed] = starts[section] + offset;
+      ends[section - removed] = ends[section] + offset;
+      ids[section - removed] = ids[section];
+    }
+    count -= removed;
+    lastSection = Math.max(Math.min(lastSection, count - 1), 0);
+  }
+
+  /**
+   * @return the number of sections indexed so far
+   */
+  int getSectionCount() {
+    return count;
+  }
+
+  /**
+   * @return the index of the first section indexed so far which ends after the given position,
+   * or the number of sections indexed if there is none, without querying the sources
+   */
+  int findSection(int position) {
+    int low = 0;
+    int high = count;
+    while (low < high) {
+      final int middle = (low + high) >>> 1;
+      if (ends[middle] < position + 1) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return the header id of the given position
+   */
+  long getId(int position) {
+    final int section = getSection(position);
+    return ids[section];
+  }
+
+  /**
+   * @return true if the given position is the first one of its section
+   */
+  boolean isSectionStart(int position) {
+    final int section = getSection(position);
+    return starts[section] == position;
+  }
+
+  /**
+   * @return the first position of the section following the one of the given position, or the
+   * number of items if the position belongs to the last section
+   */
+  int getNextSectionStart(int position) {
+    final int end = ends[getSection(position)];
+    return end < itemCount ? end : Math.max(itemCount, position + 1);
+  }
+
+  /**
+   * @return the index of the section the given position belongs to
+   */
+  int getSection(int position) {
+    if (sectionSource != null && !loaded) {
+      load();
+    }
+
+    final int last = lastSection;
+    if (last < count && starts[last] <= position) {
+      if (position < ends[last]) {
+        return last;
+      }
+      if (last + 1 < count && starts[last + 1] <= position && position < ends[last + 1]) {
+        return lastSection = last + 1;
+      }
+    }
+
+    // the last section starting at or before the position, or -1 if there is none
+    int low = -1;
+    int high = count - 1;
+    while (low < high) {
+      final int middle = (low + high + 1) >>> 1;
+      if (starts[middle] <= position) {
+        low = middle;
+      } else {
+        high = middle - 1;
+      }
+    }
+    if (sectionSource != null) {
+      return lastSection = Math.max(low, 0);
+    }
+    if (low >= 0 && position < ends[low]) {
+      return lastSection = low;
+    }
+    return lastSection = index(position, low);
+  }
+
+  /**
+   * @return the first position of the given section
+   */
+  int getSectionStart(int section) {
+    return starts[section];
+  }
+
+  /**
+   * @return the header id of the given section
+   */
+  long getSectionId(int section) {
+    return ids[section];
+  }
+
+  private void load() {
+    final int sectionCount = sectionSource.getSectionCount();
+    if (sectionCount > starts.length) {
+      starts = new int[sectionCount];
+      ends = new int[sectionCount];
+      ids = new long[sectionCount];
+    }
+    for (int section = 0; section < sectionCount; section++) {
+      starts[section] = sectionSource.getSectionStart(section);
+      ids[section] = sectionSource.getSectionId(section);
+      if (section > 0) {
+        ends[section - 1] = starts[section];
+      }
+    }
+    if (sectionCount > 0) {
+      // the last section spans up to the end of the list
+      ends[sectionCount - 1] = Integer.MAX_VALUE;
+    }
+    count = sectionCount;
+    loaded = true;
+  }
+
+  /**
+   * Indexes the sections around the given position, which lies between the end of the given
+   * section and the start of the next one, and returns the index of the section of the position.
+   * The ids are read from the end of the given section if it is close, or from the position
+   * itself otherwise, up to the position, or a whole batch if the ids are read in batches; the
+   * first and the last section read are then completed by galloping.
+   */
+  private int index(int position, int previous) {
+    final int floor = previous >= 0 ? ends[previous] : 0;
+    final int ceiling = previous + 1 < count ? starts[previous + 1] : Math.max(itemCount, position + 1);
+
+    final int windowStart = position - floor <= ID_BATCH_SIZE ? floor : position;
+    final int windowEnd;
+    if (rangeIdSource != null) {
+      windowEnd = Math.min(ceiling, Math.max(position + 1, windowStart + ID_BATCH_SIZE));
+      rangeIdSource.getIds(windowStart, windowEnd - windowStart, idBatch);
+    } else {
+      windowEnd = position + 1;
+      for (int i = windowStart; i < windowEnd; i++) {
+        idBatch[i - windowStart] = idSource.getId(i);
+      }
+    }
+
+    int section = previous + 1;
+    int found = section;
+    int start = windowStart > floor ? findStart(windowStart, idBatch[0], floor) : windowStart;
+    for (int i = windowStart + 1; i <= windowEnd; i++) {
+      final long id = idBatch[i - 1 - windowStart];
+      if (i == windowEnd || idBatch[i - windowStart] != id) {
+        final int end = i < windowEnd || windowEnd == ceiling ? i : findEnd(i - 1, id, ceiling);
+        if (start <= position && position < end) {
+          found = section;
+        }
+        insert(section++, start, end, id);
+        start = i;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * @return the first position of the section of the given position, which has the given id,
+   * looking no further back than the given position
+   */
+  private int findStart(int position, long id, int floor) {
+    if (id == StickyHeaderDecoration.NO_HEADER_ID) {
+      return scanStart(position, floor);
+    }
+
+    // the id of low differs, the one of high doesn't
+    int low = floor - 1;
+    int high = position;
+    int step = 1;
+    boolean galloping = true;
+    while (high - low > 1) {
+      final int probe = galloping ? Math.max(high - step, low + 1) : (low + high) >>> 1;
+      if (idSource.getId(probe) == id) {
+        high = probe;
+        step <<= 1;
+      } else {
+        low = probe;
+        galloping = false;
+      }
+    }
+    return high;
+  }
+
+  /**
+   * @return the end of the section of the given position, which has the given id, looking no
+   * further than the given end
+   */
+  private int findEnd(int position, long id, int ceiling) {
+    if (id == StickyHeaderDecoration.NO_HEADER_ID) {
+      return scanEnd(position, ceiling);
+    }
+
+    // the id of low doesn't differ, the one of high does
+    int low = position;
+    int high = ceiling;
+    int step = 1;
+    boolean galloping = true;
+    while (high - low > 1) {
+      final int probe = galloping ? Math.min(low + step, high - 1) : (low + high) >>> 1;
+      if (idSource.getId(probe) == id) {
+        low = probe;
+        step <<= 1;
+      } else {
+        high = probe;
+        galloping = false;
+      }
+    }
+    return high;
+  }
+
+  /**
+   * @return the first position of the run without a header of the given position, looking no
+   * further back than the given position
+   */
+  private int scanStart(int position, int floor) {
+    int start = position;
+    if (rangeIdSource == null) {
+      while (start > floor && idSource.getId(start - 1) == StickyHeaderDecoration.NO_HEADER_ID) {
+        start--;
+      }
+      return start;
+    }
+
+    while (start > floor) {
+      final int batch = Math.min(ID_BATCH_SIZE, start - floor);
+      rangeIdSource.getIds(start - batch, batch, scanBatch);
+      for (int i = batch - 1; i >= 0; i--) {
+        if (scanBatch[i] != StickyHeaderDecoration.NO_HEADER_ID) {
+          return start - batch + i + 1;
+        }
+      }
+      start -= batch;
+    }
+    return start;
+  }
+
+  /**
+   * @return the end of the run without a header of the given position, looking no further than
+   * the given end
+   */
+  private int scanEnd(int position, int ceiling) {
+    int end = position + 1;
+    if (rangeIdSource == null) {
+      while (end < ceiling && idSource.getId(end) == StickyHeaderDecoration.NO_HEADER_ID) {
+        end++;
+      }
+      return end;
+    }
+
+    while (end < ceiling) {
+      final int batch = Math.min(ID_BATCH_SIZE, ceiling - end);
+      rangeIdSource.getIds(end, batch, scanBatch);
+      for (int i = 0; i < batch; i++) {
+        if (scanBatch[i] != StickyHeaderDecoration.NO_HEADER_ID) {
+          return end + i;
+        }
+      }
+      end += batch;
+    }
+    return end;
+  }
+
+  private void insert(int section, int start, int end, long id) {
+    if (count == starts.length) {
+      starts = Arrays.copyOf(starts, count * 2);
+      ends = Arrays.copyOf(ends, count * 2);
+      ids = Arrays.copyOf(ids, count * 2);
+    }
+    System.arraycopy(starts, section, starts, section + 1, count - section);
+    System.arraycopy(ends, section, ends, section + 1, count - section);
+    System.arraycopy(ids, section, ids, section + 1, count - section);
+    starts[section] = start;
+    ends[section] = end;
+    ids[section] = id;
+    count++;
+  }
+}
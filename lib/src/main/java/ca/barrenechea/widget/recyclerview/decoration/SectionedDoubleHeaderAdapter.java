@@ -0,0 +1,53 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+/**
+ * An optional interface for a {@link DoubleHeaderAdapter} or a {@link DoubleTextHeaderAdapter}
+ * which knows both the header and the sub-header sections of its list.
+ *
+ * @see SectionedHeaderAdapter
+ */
+public interface SectionedDoubleHeaderAdapter extends SectionedHeaderAdapter {
+  /**
+   * Returns the number of sub-header sections.
+   *
+   * @return the section count
+   */
+  int getSubHeaderSectionCount();
+
+  /**
+   * Returns the first item position of the given sub-header section. Sections must be reported
+   * in ascending order of their first positions, starting with position 0.
+   *
+   * @param section
+   *   the section index
+   *
+   * @return the first item position of the section
+   */
+  int getSubHeaderSectionStart(int section);
+
+  /**
+   * Returns the sub-header id of the given sub-header section.
+   *
+   * @param section
+   *   the section index
+   *
+   * @return the sub-header id
+   */
+  long getSubHeaderSectionId(int section);
+}
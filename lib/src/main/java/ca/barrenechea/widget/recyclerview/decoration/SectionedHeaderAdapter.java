@@ -0,0 +1,56 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+/**
+ * An optional interface for a {@link StickyHeaderAdapter}, a {@link DoubleHeaderAdapter} or a
+ * {@link TextHeaderAdapter} which knows the header sections of its list. A section is a run of
+ * consecutive items sharing the same header id.
+ * <p>
+ * When the adapter implements it, the decorations index the sections reported here instead of
+ * asking for the header id of every position, so the cost of indexing grows with the number of
+ * sections rather than the number of items.
+ */
+public interface SectionedHeaderAdapter {
+  /**
+   * Returns the number of header sections.
+   *
+   * @return the section count
+   */
+  int getHeaderSectionCount();
+
+  /**
+   * Returns the first item position of the given header section. Sections must be reported in
+   * ascending order of their first positions, starting with position 0.
+   *
+   * @param section
+   *   the section index
+   *
+   * @return the first item position of the section
+   */
+  int getHeaderSectionStart(int section);
+
+  /**
+   * Returns the header id of the given header section.
+   *
+   * @param section
+   *   the section index
+   *
+   * @return the header id
+   */
+  long getHeaderSectionId(int section);
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import androidx.annotation.Px;
+
+/**
+ * An optional interface for a {@link DoubleHeaderAdapter} which knows the height of both its
+ * headers and its sub-headers ahead of time.
+ *
+ * @see SizedHeaderAdapter
+ */
+public interface SizedDoubleHeaderAdapter extends SizedHeaderAdapter {
+  /**
+   * Returns the height of the sub-headers of the given view type, exact or estimated.
+   *
+   * @param viewType
+   *   the sub-header view type
+   *
+   * @return the sub-header height in pixels, or a negative value to create and measure the
+   * sub-headers of this view type during layout
+   */
+  @Px
+  int getSubHeaderHeight(int viewType);
+}
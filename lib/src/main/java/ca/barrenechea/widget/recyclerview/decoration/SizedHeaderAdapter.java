@@ -0,0 +1,45 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import androidx.annotation.Px;
+
+/**
+ * An optional interface for a {@link StickyHeaderAdapter} or a {@link DoubleHeaderAdapter} which
+ * knows the height of its headers ahead of time.
+ * <p>
+ * The decorations lay the items out with the declared height of the headers which are not cached
+ * yet, instead of creating, binding and measuring them, so header views are only created when they
+ * are drawn. Once a header is created, the items are laid out again if its measured height differs
+ * from the declared one: an exact height never costs a second layout, an estimated height may.
+ * <p>
+ * Heights are declared per header view type, see {@link MultiTypeHeaderAdapter}. Adapters with a
+ * single header view type are asked for view type 0.
+ */
+public interface SizedHeaderAdapter {
+  /**
+   * Returns the height of the headers of the given view type, exact or estimated.
+   *
+   * @param viewType
+   *   the header view type
+   *
+   * @return the header height in pixels, or a negative value to create and measure the headers of
+   * this view type during layout
+   */
+  @Px
+  int getHeaderHeight(int viewType);
+}
@@ -35,7 +35,8 @@ interface StickyHeaderPositionListener {
   }
 
   /**
-   * Returns the header id for the item at the given position.
+   * Returns the header id for the item at the given position. Not called when the adapter
+   * implements {@link SectionedHeaderAdapter}.
    *
    * @param position
    *   the item position
@@ -45,7 +46,8 @@ interface StickyHeaderPositionListener {
   long getHeaderId(int position);
 
   /**
-   * Creates a new header ViewHolder.
+   * Creates a new header ViewHolder. Called on a background thread when the adapter implements
+   * {@link AsyncHeaderAdapter} and the decoration was given an executor.
    *
    * @param parent
    *   the header's view parent
@@ -16,6 +16,7 @@
 
 package ca.barrenechea.widget.recyclerview.decoration;
 
+import android.content.ComponentCallbacks2;
 import android.graphics.Canvas;
 import android.graphics.Rect;
 import android.view.View;
@@ -25,8 +26,8 @@
 import androidx.annotation.Nullable;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * A sticky header decoration for android's RecyclerView.
@@ -34,12 +35,75 @@
 public class StickyHeaderDecoration extends RecyclerView.ItemDecoration {
   public static final long NO_HEADER_ID = -1L;
 
-  private Map<Long, RecyclerView.ViewHolder> headerCache;
+  private final HeaderController headers;
   private StickyHeaderAdapter adapter;
   private boolean renderInline;
   private final Rect itemBounds = new Rect();
+  private final ChildSnapshot children = new ChildSnapshot();
+  private final HeaderLayoutEngine layout = new HeaderLayoutEngine();
+  private final ViewHeaderHeights headerHeights = new ViewHeaderHeights();
+
+  private final SectionIndex sections;
+  private RecyclerView.Adapter observedAdapter;
+  private final RecyclerView.AdapterDataObserver dataObserver = new RecyclerView.AdapterDataObserver() {
+    @Override
+    public void onChanged() {
+      onDataChanged();
+    }
+
+    @Override
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+      onDataChanged(positionStart, positionStart + itemCount, 0);
+    }
+
+    @Override
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+      // the items may extend the section before the insertion point, and the item which was at
+      // the insertion point may now start a section
+      onDataChanged(Math.max(positionStart - 1, 0), positionStart + 1, itemCount);
+    }
+
+    @Override
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+      onDataChanged(positionStart, positionStart + itemCount, -itemCount);
+    }
+
+    @Override
+    public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+      onDataChanged(Math.min(fromPosition, toPosition), Math.max(fromPosition, toPosition) + itemCount, 0);
+    }
+  };
 
   private StickyHeaderAdapter.StickyHeaderPositionListener positionListener;
+  private HeaderMetrics metrics;
+  private boolean tracing;
+  private HeaderOverlay overlay;
+  private final HeaderPrefetcher prefetcher = new HeaderPrefetcher() {
+    @Override
+    int prefetch(@NonNull RecyclerView parent, int position, int direction, long deadlineNanos) {
+      return prefetchSection(parent, position, direction, deadlineNanos);
+    }
+  };
+  private final HeaderPrewarmer prewarmer = new HeaderPrewarmer() {
+    @Override
+    int prewarm(@NonNull RecyclerView parent, int position) {
+      return prewarmSection(parent, position);
+    }
+  };
+  private final HeaderTrimmer trimmer = new HeaderTrimmer() {
+    @Override
+    void trim() {
+      headers.trim();
+    }
+
+    @Override
+    void release() {
+      prewarmer.cancel();
+      prefetcher.cancel();
+      clearHeaderCache();
+      stopObservingAdapter();
+    }
+  };
 
   /**
    * @param adapter
@@ -55,38 +119,356 @@ public StickyHeaderDecoration(@NonNull StickyHeaderAdapter adapter) {
    */
   public StickyHeaderDecoration(@NonNull StickyHeaderAdapter adapter, boolean renderInline) {
     this.adapter = adapter;
-    this.headerCache = new HashMap<>();
+    this.headers = createHeaderController(adapter);
     this.renderInline = renderInline;
+    this.sections = createSectionIndex(adapter);
+  }
+
+  @NonNull
+  private static HeaderController createHeaderController(@NonNull final StickyHeaderAdapter adapter) {
+    final VersionedHeaderAdapter versioned = adapter instanceof VersionedHeaderAdapter ? (VersionedHeaderAdapter) adapter : null;
+    final AsyncHeaderAdapter async = adapter instanceof AsyncHeaderAdapter ? (AsyncHeaderAdapter) adapter : null;
+    final MultiTypeHeaderAdapter multiType = adapter instanceof MultiTypeHeaderAdapter ? (MultiTypeHeaderAdapter) adapter : null;
+    final PayloadHeaderAdapter payloads = adapter instanceof PayloadHeaderAdapter ? (PayloadHeaderAdapter) adapter : null;
+    final SizedHeaderAdapter sized = adapter instanceof SizedHeaderAdapter ? (SizedHeaderAdapter) adapter : null;
+    return new HeaderController(new HeaderCache(), HeaderController.LEVEL_HEADER) {
+      @NonNull
+      @Override
+      RecyclerView.ViewHolder createHolder(@NonNull ViewGroup parent, int viewType) {
+        return multiType != null ? multiType.onCreateHeaderViewHolder(parent, viewType) : adapter.onCreateHeaderViewHolder(parent);
+      }
+
+      @Override
+      int getViewType(int position) {
+        return multiType != null ? multiType.getHeaderViewType(position) : DEFAULT_VIEW_TYPE;
+      }
+
+      @Override
+      void bindHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+        //noinspection unchecked
+        adapter.onBindHeaderViewHolder(holder, position);
+      }
+
+      @Override
+      boolean bindHolder(@NonNull RecyclerView.ViewHolder holder, int position, @NonNull List<Object> payloadList) {
+        if (payloads == null) {
+          return super.bindHolder(holder, position, payloadList);
+        }
+        //noinspection unchecked
+        return payloads.onBindHeaderViewHolder(holder, position, payloadList);
+      }
+
+      @Override
+      boolean hasContentVersions() {
+        return versioned != null;
+      }
+
+      @Override
+      long getContentVersion(int position) {
+        return versioned.getHeaderVersion(position);
+      }
+
+      @Override
+      int getDeclaredHeight(int viewType) {
+        return sized != null ? sized.getHeaderHeight(viewType) : NO_HEIGHT;
+      }
+
+      @Override
+      int getEstimatedHeight() {
+        return async != null ? async.getEstimatedHeaderHeight() : 0;
+      }
+    };
+  }
+
+  @NonNull
+  private static SectionIndex createSectionIndex(@NonNull final StickyHeaderAdapter adapter) {
+    return SectionIndex.forHeaders(adapter, new SectionIndex.IdSource() {
+      @Override
+      public long getId(int position) {
+        return adapter.getHeaderId(position);
+      }
+    });
   }
 
   public void setPositionListener(StickyHeaderAdapter.StickyHeaderPositionListener positionListener) {
     this.positionListener = positionListener;
   }
 
+  /**
+   * Replaces the header view cache. Headers will be recreated and rebound on list scroll after
+   * this method has been called.
+   *
+   * @param headerCache
+   *   the header cache to use
+   */
+  public void setHeaderCache(@NonNull HeaderCache headerCache) {
+    headers.setCache(headerCache);
+  }
+
+  /**
+   * @return the header view cache
+   */
+  @NonNull
+  public HeaderCache getHeaderCache() {
+    return headers.getCache();
+  }
+
+  /**
+   * Sets the pool keeping the header view holders evicted from the header cache, to share it
+   * with the decorations of other lists using the same header views.
+   *
+   * @param headerPool
+   *   the header pool to use, or null to use a pool of this decoration's own
+   */
+  public void setHeaderPool(@Nullable HeaderPool headerPool) {
+    headers.setPool(headerPool);
+  }
+
+  /**
+   * @return the header view pool
+   */
+  @NonNull
+  public HeaderPool getHeaderPool() {
+    return headers.getPool();
+  }
+
+  /**
+   * Replaces the known header heights, e.g. with the ones saved to the instance state before a
+   * configuration change or written to a file, so the first layout doesn't have to create and
+   * measure the headers.
+   *
+   * @param headerHeights
+   *   the header heights to use
+   */
+  public void setHeaderHeights(@NonNull HeaderHeights headerHeights) {
+    headers.setHeights(headerHeights);
+  }
+
+  /**
+   * @return the measured header heights, to be saved to the instance state or a file
+   */
+  @NonNull
+  public HeaderHeights getHeaderHeights() {
+    return headers.getHeights();
+  }
+
+  /**
+   * Sets the version of the header layouts. Known header heights measured with another version
+   * are dropped, so the version should change whenever the header layouts change in a way
+   * affecting their heights, e.g. with an app update.
+   *
+   * @param version
+   *   the version of the header layouts
+   */
+  public void setHeaderLayoutVersion(int version) {
+    headers.setLayoutVersion(version);
+  }
+
+  /**
+   * Starts collecting metrics of the work done by this decoration into the given metrics, or stops
+   * collecting them.
+   *
+   * @param metrics
+   *   the metrics to update, or null to disable them
+   */
+  public void setMetrics(@Nullable HeaderMetrics metrics) {
+    this.metrics = metrics;
+    headers.setMetrics(metrics);
+  }
+
+  /**
+   * @return the metrics updated by this decoration, or null if they are disabled
+   */
+  @Nullable
+  public HeaderMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Enables trace sections around the work done by this decoration, shown in systrace and Perfetto
+   * captures on API 18 and above.
+   *
+   * @param tracing
+   *   true to emit trace sections
+   */
+  public void setTracingEnabled(boolean tracing) {
+    this.tracing = tracing;
+    headers.setTracing(tracing);
+  }
+
+  /**
+   * Enables drawing sticky headers from a snapshot of their rendering instead of drawing their
+   * views on every frame, which is cheaper for complex headers. A header's snapshot is recorded
+   * when it is first drawn and only recorded again after the header is rebound or resized, so
+   * headers whose views change without being rebound, e.g. when an image finishes loading, must
+   * be refreshed with {@link #invalidateHeader(long)}.
+   *
+   * @param enabled
+   *   true to draw headers from snapshots
+   */
+  public void setSnapshotsEnabled(boolean enabled) {
+    headers.setSnapshots(enabled);
+  }
+
+  /**
+   * Creates the header view holders on the given executor instead of the main thread. Created
+   * holders are handed to the header cache on the main thread, and until then the space of a
+   * header is held by a placeholder of the last measured or the estimated header height. The
+   * adapter must implement {@link AsyncHeaderAdapter}.
+   *
+   * @param executor
+   *   the executor creating header view holders, or null to create them on the main thread
+   */
+  public void setHeaderExecutor(@Nullable Executor executor) {
+    if (executor != null && !(adapter instanceof AsyncHeaderAdapter)) {
+      throw new IllegalStateException("The adapter must implement AsyncHeaderAdapter to create headers in the background");
+    }
+    headers.setExecutor(executor);
+  }
+
+  /**
+   * Sets the number of sections ahead of the visible ones in the scroll direction whose headers
+   * are created, bound and measured in the gap between frames while the list scrolls, so they are
+   * ready when they scroll into view. Prefetching a header is skipped when it isn't expected to
+   * end before the next frame is due. Prefetching is disabled by default.
+   *
+   * @param count
+   *   the number of sections to prefetch, or 0 to disable prefetching
+   */
+  public void setPrefetchSectionCount(int count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("count < 0");
+    }
+    prefetcher.setSectionCount(count);
+    headers.setPrefetching(count > 0);
+  }
+
+  /**
+   * Creates, binds and measures the headers of the next {@code count} sections below the
+   * visible items while the main thread is idle, so the first scroll doesn't have to create
+   * them. Meant to be called right after the list is set up; stops as soon as the list is
+   * touched. The header cache should be able to hold the visible and pre-warmed headers.
+   *
+   * @param parent
+   *   the list this decoration is added to
+   * @param count
+   *   the number of sections to prepare
+   */
+  public void prewarmHeaders(@NonNull RecyclerView parent, int count) {
+    prewarmer.start(parent, count);
+  }
+
+  /**
+   * Sets the memory trim level from which the headers which are not on screen are dropped, and
+   * the pooled ones with them, when the system reports memory pressure. All the headers are
+   * released when the list is detached from its window. Defaults to
+   * {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW}.
+   *
+   * @param level
+   *   one of the {@code TRIM_MEMORY_*} levels of {@link ComponentCallbacks2}
+   */
+  public void setTrimMemoryLevel(int level) {
+    trimmer.setTrimLevel(level);
+  }
+
+  /**
+   * Shows the pinned header as a real child view of the given container instead of drawing it on
+   * the list, so it can use its own hardware layer, ripples and animations, and scrolling only
+   * moves it. Headers which are not pinned are still drawn on the list.
+   * <p>
+   * The container must be laid over the list with the same bounds and no padding, e.g. a
+   * FrameLayout sibling declared after the list. Touches outside the pinned header go through to
+   * the list, unless the container itself is clickable.
+   *
+   * @param container
+   *   the container of the pinned header, or null to draw it on the list
+   */
+  public void setOverlayContainer(@Nullable ViewGroup container) {
+    if (overlay != null) {
+      if (overlay.getContainer() == container) {
+        return;
+      }
+      overlay.hide();
+    }
+    overlay = container != null ? new HeaderOverlay(container, 1) : null;
+  }
+
+  /**
+   * Stops pre-warming headers started with {@link #prewarmHeaders(RecyclerView, int)}.
+   */
+  public void cancelPrewarm() {
+    prewarmer.cancel();
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
   public void getItemOffsets(@NonNull Rect outRect, @NonNull View view, @NonNull RecyclerView parent, @NonNull RecyclerView.State state) {
+    final HeaderMetrics metrics = this.metrics;
+    final long start = metrics != null ? System.nanoTime() : 0;
+    if (tracing) {
+      HeaderTrace.begin(HeaderTrace.ITEM_OFFSETS);
+    }
+
+    observeAdapter(parent);
 
     int position = parent.getChildAdapterPosition(view);
     int headerHeight = 0;
 
     if (position != RecyclerView.NO_POSITION && hasHeader(position) && showHeaderAboveItem(position)) {
-      View header = getHeader(parent, position, true).itemView;
-      headerHeight = getHeaderHeightForLayout(header);
+      headerHeight = getHeaderHeightForLayout(headers.getLayoutHeight(parent, sections.getId(position), position));
     }
 
     if (headerHeight > 0) {
       outRect.set(0, headerHeight, 0, 0);
     }
+
+    if (tracing) {
+      HeaderTrace.end();
+    }
+    if (metrics != null) {
+      metrics.onItemOffsets(System.nanoTime() - start);
+    }
   }
 
   private boolean showHeaderAboveItem(int itemAdapterPosition) {
-    if (itemAdapterPosition == 0) {
-      return true;
+    return sections.isSectionStart(itemAdapterPosition);
+  }
+
+  /**
+   * Keeps the section index in sync with the data of the list's adapter, and the headers trimmed
+   * while the list is shown.
+   */
+  private void observeAdapter(@NonNull RecyclerView parent) {
+    trimmer.attach(parent);
+
+    final RecyclerView.Adapter adapter = parent.getAdapter();
+    if (adapter != observedAdapter) {
+      if (observedAdapter != null) {
+        observedAdapter.unregisterAdapterDataObserver(dataObserver);
+      }
+      if (adapter != null) {
+        adapter.registerAdapterDataObserver(dataObserver);
+      }
+      observedAdapter = adapter;
+      sections.invalidate();
+    }
+
+    if (adapter != null) {
+      sections.setItemCount(adapter.getItemCount());
+    }
+  }
+
+  /**
+   * Stops observing the list's adapter, so an adapter outliving the list doesn't keep the
+   * decoration alive. The adapter is observed again when the list is next drawn.
+   */
+  private void stopObservingAdapter() {
+    if (observedAdapter != null) {
+      observedAdapter.unregisterAdapterDataObserver(dataObserver);
+      observedAdapter = null;
     }
-    return adapter.getHeaderId(itemAdapterPosition - 1) != adapter.getHeaderId(itemAdapterPosition);
   }
 
   /**
@@ -94,66 +476,134 @@ private boolean showHeaderAboveItem(int itemAdapterPosition) {
    * rebound on list scroll after this method has been called.
    */
   public void clearHeaderCache() {
-    headerCache.clear();
+    if (overlay != null) {
+      overlay.hide();
+    }
+    headers.clear();
+    sections.invalidate();
   }
 
-  @Nullable
-  public View findHeaderViewUnder(float x, float y) {
-    for (RecyclerView.ViewHolder holder : headerCache.values()) {
-      final View child = holder.itemView;
-      final float translationX = child.getTranslationX();
-      final float translationY = child.getTranslationY();
+  /**
+   * Marks all cached headers to be rebound on their next use. Headers are rebound automatically
+   * when the list's adapter notifies a data change, so this is only needed when header content
+   * changes without such a notification.
+   */
+  public void invalidateHeaders() {
+    headers.invalidate();
+  }
 
-      if (x >= child.getLeft() + translationX &&
-        x <= child.getRight() + translationX &&
-        y >= child.getTop() + translationY &&
-        y <= child.getBottom() + translationY) {
-        return child;
-      }
+  /**
+   * Marks the cached header of the given id to be rebound on its next use.
+   *
+   * @param headerId
+   *   the header id
+   */
+  public void invalidateHeader(long headerId) {
+    headers.invalidate(headerId);
+  }
+
+  private void onDataChanged() {
+    sections.invalidate();
+    headers.invalidate();
+  }
+
+  /**
+   * Rebinds the headers of the items between start, inclusive, and end, exclusive, and indexes
+   * their sections again. The items following them were moved by the given offset.
+   */
+  private void onDataChanged(int start, int end, int offset) {
+    headers.invalidateRange(sections, start, end);
+    if (offset != 0) {
+      headers.offsetPositions(end, offset);
     }
+    sections.invalidateRange(start, end, offset);
+  }
 
-    return null;
+  /**
+   * Notifies that part of the cached header of the given id changed. The payload is handed to
+   * the adapter's
+   * {@link PayloadHeaderAdapter#onBindHeaderViewHolder(RecyclerView.ViewHolder, int, List)}
+   * when the header is next drawn, instead of binding it again. Adapters which don't implement
+   * {@link PayloadHeaderAdapter} bind the header again.
+   *
+   * @param headerId
+   *   the header id
+   * @param payload
+   *   the description of the change, or null to bind the header again
+   */
+  public void notifyHeaderChanged(long headerId, @Nullable Object payload) {
+    headers.notifyChanged(headerId, payload);
+  }
+
+  @Nullable
+  public View findHeaderViewUnder(float x, float y) {
+    return headers.getCache().findHeaderViewUnder(x, y);
   }
 
   private boolean hasHeader(int position) {
-    return adapter.getHeaderId(position) != NO_HEADER_ID;
+    return sections.getId(position) != NO_HEADER_ID;
   }
 
-  @NonNull
-  private RecyclerView.ViewHolder getHeader(@NonNull RecyclerView parent, int position, boolean shouldBind) {
-    final long key = adapter.getHeaderId(position);
+  @Nullable
+  private RecyclerView.ViewHolder getHeader(@NonNull RecyclerView parent, int position) {
+    return headers.getHeader(parent, sections.getId(position), position, false);
+  }
 
-    if (headerCache.containsKey(key)) {
-      final RecyclerView.ViewHolder holder = headerCache.get(key);
-      if (shouldBind) {
-        //noinspection unchecked
-        adapter.onBindHeaderViewHolder(holder, position);
-        final View header = holder.itemView;
-        measureView(parent, header);
-      }
-      return holder;
-    } else {
-      final RecyclerView.ViewHolder holder = adapter.onCreateHeaderViewHolder(parent);
-      final View header = holder.itemView;
+  /**
+   * @return the height of the header of the given position, or the placeholder height if it is
+   * being created in the background
+   */
+  private int getHeaderViewHeight(@NonNull RecyclerView parent, int position) {
+    final RecyclerView.ViewHolder holder = getHeader(parent, position);
+    return holder != null ? holder.itemView.getHeight() : headers.getPlaceholderHeight();
+  }
+
+  /**
+   * Prepares the header of the first section starting at or after the given position.
+   */
+  private int prewarmSection(@NonNull RecyclerView parent, int position) {
+    observeAdapter(parent);
+    final int itemCount = parent.getAdapter().getItemCount();
+    if (position >= itemCount) {
+      return RecyclerView.NO_POSITION;
+    }
 
-      //noinspection unchecked
-      adapter.onBindHeaderViewHolder(holder, position);
-      measureView(parent, header);
-      headerCache.put(key, holder);
+    final int start = sections.isSectionStart(position) ? position : sections.getNextSectionStart(position);
+    if (start >= itemCount) {
+      return RecyclerView.NO_POSITION;
+    }
 
-      return holder;
+    if (hasHeader(start)) {
+      headers.prewarm(parent, sections.getId(start), start);
     }
+    return start + 1;
   }
 
-  private void measureView(RecyclerView parent, View header) {
-    int widthSpec = View.MeasureSpec.makeMeasureSpec(parent.getWidth(), View.MeasureSpec.EXACTLY);
-    int heightSpec = View.MeasureSpec.makeMeasureSpec(parent.getHeight(), View.MeasureSpec.UNSPECIFIED);
+  /**
+   * Prefetches the header of the first section boundary at the given position or beyond it in the
+   * given direction.
+   */
+  private int prefetchSection(@NonNull RecyclerView parent, int position, int direction, long deadlineNanos) {
+    observeAdapter(parent);
+    final int itemCount = parent.getAdapter().getItemCount();
+    if (position < 0 || position >= itemCount) {
+      return RecyclerView.NO_POSITION;
+    }
 
-    int childWidth = ViewGroup.getChildMeasureSpec(widthSpec, parent.getPaddingLeft() + parent.getPaddingRight(), header.getLayoutParams().width);
-    int childHeight = ViewGroup.getChildMeasureSpec(heightSpec, parent.getPaddingTop() + parent.getPaddingBottom(), header.getLayoutParams().height);
+    final int start;
+    if (direction > 0) {
+      start = sections.isSectionStart(position) ? position : sections.getNextSectionStart(position);
+    } else {
+      start = sections.getSectionStart(sections.getSection(position));
+    }
+    if (start >= itemCount) {
+      return RecyclerView.NO_POSITION;
+    }
 
-    header.measure(childWidth, childHeight);
-    header.layout(0, 0, header.getMeasuredWidth(), header.getMeasuredHeight());
+    if (hasHeader(start) && !headers.prefetch(parent, sections.getId(start), start, deadlineNanos)) {
+      return RecyclerView.NO_POSITION;
+    }
+    return start + direction;
   }
 
   /**
@@ -161,73 +611,115 @@ private void measureView(RecyclerView parent, View header) {
    */
   @Override
   public void onDrawOver(@NonNull Canvas canvas, @NonNull RecyclerView parent, @NonNull RecyclerView.State state) {
+    final HeaderMetrics metrics = this.metrics;
+    final long start = metrics != null ? System.nanoTime() : 0;
+    if (tracing) {
+      HeaderTrace.begin(HeaderTrace.DRAW_OVER);
+    }
 
-    final int count = parent.getChildCount();
-    long previousHeaderId = -1;
+    observeAdapter(parent);
+    takeSnapshot(parent);
 
-    for (int layoutPos = 0; layoutPos < count; layoutPos++) {
-      final View child = parent.getChildAt(layoutPos);
-      final int adapterPos = parent.getChildAdapterPosition(child);
+    final HeaderLayoutEngine layout = this.layout;
+    headerHeights.parent = parent;
+    layout.layoutSticky(children, headerHeights);
+    headerHeights.parent = null;
 
-      if (adapterPos != RecyclerView.NO_POSITION && hasHeader(adapterPos)) {
-        long headerId = adapter.getHeaderId(adapterPos);
+    final HeaderOverlay overlay = this.overlay;
+    if (overlay != null) {
+      overlay.beginFrame();
+    }
+    for (int i = 0; i < layout.drawCount; i++) {
+      final RecyclerView.ViewHolder holder = getHeader(parent, layout.drawPositions[i]);
+      if (holder == null) {
+        continue;
+      }
 
-        if (headerId != previousHeaderId) {
-          itemBounds.set(0, 0, 0, 0);
-          parent.getDecoratedBoundsWithMargins(child, itemBounds);
+      final View header = holder.itemView;
+      final int left = layout.drawLefts[i];
+      final int top = layout.drawTops[i];
+
+      if (overlay != null && layout.drawPinned[i]) {
+        overlay.show(0, header, left, top);
+      } else {
+        if (overlay != null) {
+          overlay.hide(header);
+        }
+        canvas.save();
+        canvas.translate(left, top);
+        header.setTranslationX(left);
+        header.setTranslationY(top);
+        headers.draw(canvas, layout.drawIds[i], header);
+        canvas.restore();
+      }
 
-          previousHeaderId = headerId;
-          View header = getHeader(parent, adapterPos, false).itemView;
-          canvas.save();
+      if (positionListener != null) {
+        positionListener.onPositionChanged(layout.drawIds[i], left, top);
+      }
+    }
 
-          final int left = itemBounds.left;
-          final int top = getHeaderTop(parent, itemBounds.top, adapterPos, layoutPos);
-          canvas.translate(left, top);
+    if (overlay != null) {
+      overlay.endFrame();
+    }
 
-          header.setTranslationX(left);
-          header.setTranslationY(top);
-          header.draw(canvas);
-          canvas.restore();
+    headers.endFrame();
+    prefetcher.onFrame(parent, children);
+    if (headers.consumeHeightMismatch()) {
+      // the items were laid out with a declared header height the header doesn't have
+      parent.invalidateItemDecorations();
+    }
 
-          if (positionListener != null) {
-            positionListener.onPositionChanged(headerId, left, top);
-          }
-        }
-      }
+    if (tracing) {
+      HeaderTrace.end();
+    }
+    if (metrics != null) {
+      metrics.onDraw(System.nanoTime() - start);
     }
   }
 
-  private int getHeaderTop(@NonNull RecyclerView parent, int top, int adapterPos, int layoutPos) {
-    if (layoutPos == 0) {
-      final int count = parent.getChildCount();
-      final long currentId = adapter.getHeaderId(adapterPos);
-      // find next view with header and compute the offscreen push if needed
-      for (int i = 1; i < count; i++) {
-        int adapterPosHere = parent.getChildAdapterPosition(parent.getChildAt(i));
-        if (adapterPosHere != RecyclerView.NO_POSITION) {
-          long nextId = adapter.getHeaderId(adapterPosHere);
-          if (nextId != currentId) {
-            final View next = parent.getChildAt(i);
-            itemBounds.set(0, 0, 0, 0);
-            parent.getDecoratedBoundsWithMargins(next, itemBounds);
-
-            final int offset = itemBounds.top - getHeader(parent, adapterPosHere, false).itemView.getHeight();
-            if (offset < 0) {
-              return offset;
-            } else {
-              break;
-            }
-          }
-        }
-      }
+  /**
+   * Gathers the adapter positions, header ids and decorated bounds of all children in a single
+   * pass, so laying out the headers and computing the push-up offset read the same snapshot.
+   */
+  private void takeSnapshot(@NonNull RecyclerView parent) {
+    final ChildSnapshot children = this.children;
+    final int count = parent.getChildCount();
+    children.reset(count);
 
-      top = Math.max(0, top);
+    for (int i = 0; i < count; i++) {
+      final View child = parent.getChildAt(i);
+      final int adapterPos = parent.getChildAdapterPosition(child);
+      children.positions[i] = adapterPos;
+      if (adapterPos != RecyclerView.NO_POSITION) {
+        itemBounds.set(0, 0, 0, 0);
+        parent.getDecoratedBoundsWithMargins(child, itemBounds);
+        children.lefts[i] = itemBounds.left;
+        children.tops[i] = itemBounds.top;
+        children.headerIds[i] = sections.getId(adapterPos);
+      }
     }
 
-    return top;
+    children.link();
+  }
+
+  private int getHeaderHeightForLayout(int headerHeight) {
+    return renderInline ? 0 : headerHeight;
   }
 
-  private int getHeaderHeightForLayout(@NonNull View header) {
-    return renderInline ? 0 : header.getHeight();
+  /**
+   * Provides the heights of the cached header views to the layout engine.
+   */
+  private final class ViewHeaderHeights implements HeaderLayoutEngine.HeaderHeights {
+    RecyclerView parent;
+
+    @Override
+    public int getHeaderHeight(int position) {
+      return getHeaderViewHeight(parent, position);
+    }
+
+    @Override
+    public int getSubHeaderHeight(int position) {
+      return 0;
+    }
   }
 }
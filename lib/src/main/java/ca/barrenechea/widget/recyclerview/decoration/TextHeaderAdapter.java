@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import androidx.annotation.Nullable;
+
+/**
+ * The adapter to assist the {@link TextHeaderDecoration} in drawing text headers.
+ */
+public interface TextHeaderAdapter {
+  /**
+   * Returns the header id for the item at the given position. Not called when the adapter
+   * implements {@link SectionedHeaderAdapter}.
+   *
+   * @param position
+   *   the item position
+   *
+   * @return the header id
+   */
+  long getHeaderId(int position);
+
+  /**
+   * Returns the text of the header for the item at the given position. Only called the first time
+   * a header is drawn after a data change.
+   *
+   * @param position
+   *   the header's item position
+   *
+   * @return the header text, or null to draw the header without text
+   */
+  @Nullable
+  CharSequence getHeaderText(int position);
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * A sticky header decoration for android's RecyclerView which draws single line text headers
+ * directly on the canvas, without inflating a view per header.
+ * <p>
+ * Headers are pushed out of the screen by the next header like the ones of a
+ * {@link StickyHeaderDecoration}.
+ */
+public class TextHeaderDecoration extends RecyclerView.ItemDecoration {
+  private final TextHeaderRenderer headers;
+  private final boolean renderInline;
+  private final Rect itemBounds = new Rect();
+  private final ChildSnapshot children = new ChildSnapshot();
+  private final HeaderLayoutEngine layout = new HeaderLayoutEngine();
+  private final HeaderLayoutEngine.HeaderHeights headerHeights = new HeaderLayoutEngine.HeaderHeights() {
+    @Override
+    public int getHeaderHeight(int position) {
+      return headers.getHeight();
+    }
+
+    @Override
+    public int getSubHeaderHeight(int position) {
+      return 0;
+    }
+  };
+
+  private final SectionIndex sections;
+  private RecyclerView.Adapter observedAdapter;
+  private final RecyclerView.AdapterDataObserver dataObserver = new RecyclerView.AdapterDataObserver() {
+    @Override
+    public void onChanged() {
+      onDataChanged();
+    }
+
+    @Override
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+      onDataChanged();
+    }
+
+    @Override
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+      onDataChanged();
+    }
+
+    @Override
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+      onDataChanged();
+    }
+
+    @Override
+    public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+      onDataChanged();
+    }
+  };
+
+  private StickyHeaderAdapter.StickyHeaderPositionListener positionListener;
+
+  /**
+   * @param adapter
+   *   the text header adapter to use
+   * @param style
+   *   the appearance of the headers
+   */
+  public TextHeaderDecoration(@NonNull TextHeaderAdapter adapter, @NonNull TextHeaderStyle style) {
+    this(adapter, style, false);
+  }
+
+  /**
+   * @param adapter
+   *   the text header adapter to use
+   * @param style
+   *   the appearance of the headers
+   */
+  public TextHeaderDecoration(@NonNull final TextHeaderAdapter adapter, @NonNull TextHeaderStyle style, boolean renderInline) {
+    this.renderInline = renderInline;
+    this.headers = new TextHeaderRenderer(style) {
+      @Nullable
+      @Override
+      CharSequence getText(int position) {
+        return adapter.getHeaderText(position);
+      }
+    };
+    this.sections = SectionIndex.forHeaders(adapter, new SectionIndex.IdSource() {
+      @Override
+      public long getId(int position) {
+        return adapter.getHeaderId(position);
+      }
+    });
+  }
+
+  public void setPositionListener(StickyHeaderAdapter.StickyHeaderPositionListener positionListener) {
+    this.positionListener = positionListener;
+  }
+
+  /**
+   * Drops the cached header texts. Texts are asked for again automatically when the list's
+   * adapter notifies a data change, so this is only needed when header texts change without
+   * such a notification.
+   */
+  public void invalidateHeaders() {
+    headers.invalidate();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void getItemOffsets(@NonNull Rect outRect, @NonNull View view, @NonNull RecyclerView parent, @NonNull RecyclerView.State state) {
+    observeAdapter(parent);
+
+    final int position = parent.getChildAdapterPosition(view);
+    if (!renderInline && position != RecyclerView.NO_POSITION && sections.getId(position) != StickyHeaderDecoration.NO_HEADER_ID
+      && sections.isSectionStart(position)) {
+      outRect.set(0, headers.getHeight(), 0, 0);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void onDrawOver(@NonNull Canvas canvas, @NonNull RecyclerView parent, @NonNull RecyclerView.State state) {
+    observeAdapter(parent);
+    takeSnapshot(parent);
+
+    final HeaderLayoutEngine layout = this.layout;
+    layout.layoutSticky(children, headerHeights);
+
+    final int width = parent.getWidth() - parent.getPaddingLeft() - parent.getPaddingRight();
+    for (int i = 0; i < layout.drawCount; i++) {
+      final int left = layout.drawLefts[i];
+      final int top = layout.drawTops[i];
+      headers.draw(canvas, layout.drawIds[i], layout.drawPositions[i], left, top, width);
+
+      if (positionListener != null) {
+        positionListener.onPositionChanged(layout.drawIds[i], left, top);
+      }
+    }
+  }
+
+  /**
+   * Keeps the section index in sync with the data of the list's adapter.
+   */
+  private void observeAdapter(@NonNull RecyclerView parent) {
+    final RecyclerView.Adapter adapter = parent.getAdapter();
+    if (adapter != observedAdapter) {
+      if (observedAdapter != null) {
+        observedAdapter.unregisterAdapterDataObserver(dataObserver);
+      }
+      if (adapter != null) {
+        adapter.registerAdapterDataObserver(dataObserver);
+      }
+      observedAdapter = adapter;
+      onDataChanged();
+    }
+
+    if (adapter != null) {
+      sections.setItemCount(adapter.getItemCount());
+    }
+  }
+
+  private void onDataChanged() {
+    sections.invalidate();
+    headers.invalidate();
+  }
+
+  /**
+   * Gathers the adapter positions, header ids and decorated bounds of all children in a single
+   * pass.
+   */
+  private void takeSnapshot(@NonNull RecyclerView parent) {
+    final ChildSnapshot children = this.children;
+    final int count = parent.getChildCount();
+    children.reset(count);
+
+    for (int i = 0; i < count; i++) {
+      final View child = parent.getChildAt(i);
+      final int adapterPos = parent.getChildAdapterPosition(child);
+      children.positions[i] = adapterPos;
+      if (adapterPos != RecyclerView.NO_POSITION) {
+        itemBounds.set(0, 0, 0, 0);
+        parent.getDecoratedBoundsWithMargins(child, itemBounds);
+        children.lefts[i] = itemBounds.left;
+        children.tops[i] = itemBounds.top;
+        children.headerIds[i] = sections.getId(adapterPos);
+      }
+    }
+
+    children.link();
+  }
+}
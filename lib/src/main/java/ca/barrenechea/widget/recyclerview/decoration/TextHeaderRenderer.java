@@ -0,0 +1,153 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.os.Build;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.LongSparseArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Draws the text headers of one header level directly on the canvas.
+ * <p>
+ * Header texts are ellipsized to a single line, so all headers of a level share the same height
+ * and laying out the list never needs the texts. A header's text is only asked for the first
+ * time the header is drawn; its layout is then kept by header id until the data or the width of
+ * the list changes.
+ */
+abstract class TextHeaderRenderer {
+  private static final int MAX_LAYOUTS = 64;
+
+  private final TextHeaderStyle style;
+  private final TextPaint textPaint;
+  private final Paint backgroundPaint;
+  private final int height;
+
+  private final LongSparseArray<Layout> layouts = new LongSparseArray<>();
+  // the ids of the cached layouts in the order they were added, from the oldest one on
+  private final long[] layoutIds = new long[MAX_LAYOUTS];
+  private int oldestLayout;
+  private int layoutWidth = -1;
+
+  TextHeaderRenderer(@NonNull TextHeaderStyle style) {
+    this.style = style;
+
+    textPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    textPaint.setColor(style.textColor);
+    textPaint.setTextSize(style.textSize);
+    textPaint.setTypeface(style.typeface);
+
+    backgroundPaint = new Paint();
+    backgroundPaint.setColor(style.backgroundColor);
+
+    final Paint.FontMetricsInt metrics = textPaint.getFontMetricsInt();
+    height = style.paddingTop + metrics.descent - metrics.ascent + style.paddingBottom;
+  }
+
+  /**
+   * @return the text of the header of the given position
+   */
+  @Nullable
+  abstract CharSequence getText(int position);
+
+  /**
+   * @return the height of the headers, padding included
+   */
+  int getHeight() {
+    return height;
+  }
+
+  /**
+   * Drops the cached text layouts, so texts are asked for again.
+   */
+  void invalidate() {
+    layouts.clear();
+    oldestLayout = 0;
+  }
+
+  /**
+   * Draws the header of the given id with its top left corner at the given coordinates.
+   */
+  void draw(@NonNull Canvas canvas, long headerId, int position, int left, int top, int width) {
+    if (style.backgroundColor != Color.TRANSPARENT) {
+      canvas.drawRect(left, top, left + width, top + height, backgroundPaint);
+    }
+
+    final Layout layout = getLayout(headerId, position, width - style.paddingLeft - style.paddingRight);
+    if (layout != null) {
+      canvas.save();
+      canvas.translate(left + style.paddingLeft, top + style.paddingTop);
+      layout.draw(canvas);
+      canvas.restore();
+    }
+  }
+
+  @Nullable
+  private Layout getLayout(long headerId, int position, int width) {
+    if (width <= 0) {
+      return null;
+    }
+    if (width != layoutWidth) {
+      invalidate();
+      layoutWidth = width;
+    }
+
+    Layout layout = layouts.get(headerId);
+    if (layout == null) {
+      final CharSequence text = getText(position);
+      if (text == null) {
+        return null;
+      }
+
+      final CharSequence line = TextUtils.ellipsize(text, textPaint, width, TextUtils.TruncateAt.END);
+      layout = createLayout(line, width);
+      final int size = layouts.size();
+      if (size < MAX_LAYOUTS) {
+        layoutIds[(oldestLayout + size) % MAX_LAYOUTS] = headerId;
+      } else {
+        // replace the oldest layout
+        layouts.remove(layoutIds[oldestLayout]);
+        layoutIds[oldestLayout] = headerId;
+        oldestLayout = (oldestLayout + 1) % MAX_LAYOUTS;
+      }
+      layouts.put(headerId, layout);
+    }
+    return layout;
+  }
+
+  @NonNull
+  private Layout createLayout(@NonNull CharSequence line, int width) {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+      return StaticLayout.Builder.obtain(line, 0, line.length(), textPaint, width).setIncludePad(false).build();
+    }
+    return createLegacyLayout(line, width);
+  }
+
+  @SuppressWarnings("deprecation")
+  @NonNull
+  private Layout createLegacyLayout(@NonNull CharSequence line, int width) {
+    return new StaticLayout(line, textPaint, width, Layout.Alignment.ALIGN_NORMAL, 1f, 0f, false);
+  }
+}
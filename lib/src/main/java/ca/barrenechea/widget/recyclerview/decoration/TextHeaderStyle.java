@@ -0,0 +1,218 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.util.TypedValue;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.ColorRes;
+import androidx.annotation.DimenRes;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * The appearance of the headers drawn by a {@link TextHeaderDecoration} or a
+ * {@link DoubleTextHeaderDecoration}.
+ */
+public final class TextHeaderStyle {
+  final float textSize;
+  final int textColor;
+  final Typeface typeface;
+  final int backgroundColor;
+  final int paddingLeft;
+  final int paddingTop;
+  final int paddingRight;
+  final int paddingBottom;
+
+  private TextHeaderStyle(Builder builder) {
+    this.textSize = builder.mTextSize;
+    this.textColor = builder.mTextColor;
+    this.typeface = builder.mTypeface;
+    this.backgroundColor = builder.mBackgroundColor;
+    this.paddingLeft = builder.mPaddingLeft;
+    this.paddingTop = builder.mPaddingTop;
+    this.paddingRight = builder.mPaddingRight;
+    this.paddingBottom = builder.mPaddingBottom;
+  }
+
+  /**
+   * A builder for text header styles. The default builder creates a style with 16sp black text
+   * on a white background, padded by 16dp horizontally and 8dp vertically.
+   */
+  public static class Builder {
+    private Resources mResources;
+    private float mTextSize;
+    private int mTextColor;
+    private Typeface mTypeface;
+    private int mBackgroundColor;
+    private int mPaddingLeft;
+    private int mPaddingTop;
+    private int mPaddingRight;
+    private int mPaddingBottom;
+
+    public Builder(@NonNull Context context) {
+      mResources = context.getResources();
+      mTextSize = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 16f, mResources.getDisplayMetrics());
+      mTextColor = Color.BLACK;
+      mTypeface = Typeface.DEFAULT;
+      mBackgroundColor = Color.WHITE;
+      mPaddingLeft = mPaddingRight = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 16f, mResources.getDisplayMetrics());
+      mPaddingTop = mPaddingBottom = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 8f, mResources.getDisplayMetrics());
+    }
+
+    /**
+     * Sets the text size in pixels
+     *
+     * @param pixels
+     *   text size in pixels
+     *
+     * @return the current instance of the Builder
+     */
+    @NonNull
+    public Builder setTextSize(float pixels) {
+      mTextSize = pixels;
+      return this;
+    }
+
+    /**
+     * Sets the text size
+     *
+     * @param resource
+     *   text size resource id
+     *
+     * @return the current instance of the Builder
+     */
+    @NonNull
+    public Builder setTextSize(@DimenRes int resource) {
+      mTextSize = mResources.getDimensionPixelSize(resource);
+      return this;
+    }
+
+    /**
+     * Sets the text colour
+     *
+     * @param color
+     *   the colour
+     *
+     * @return the current instance of the Builder
+     */
+    @NonNull
+    public Builder setTextColor(@ColorInt int color) {
+      mTextColor = color;
+      return this;
+    }
+
+    /**
+     * Sets the text colour
+     *
+     * @param resource
+     *   the colour resource id
+     *
+     * @return the current instance of the Builder
+     */
+    @NonNull
+    public Builder setTextColorResource(@ColorRes int resource) {
+      return setTextColor(mResources.getColor(resource));
+    }
+
+    /**
+     * Sets the typeface of the text
+     *
+     * @param typeface
+     *   the typeface, or null for the default one
+     *
+     * @return the current instance of the Builder
+     */
+    @NonNull
+    public Builder setTypeface(@Nullable Typeface typeface) {
+      mTypeface = typeface;
+      return this;
+    }
+
+    /**
+     * Sets the background colour
+     *
+     * @param color
+     *   the colour
+     *
+     * @return the current instance of the Builder
+     */
+    @NonNull
+    public Builder setBackgroundColor(@ColorInt int color) {
+      mBackgroundColor = color;
+      return this;
+    }
+
+    /**
+     * Sets the background colour
+     *
+     * @param resource
+     *   the colour resource id
+     *
+     * @return the current instance of the Builder
+     */
+    @NonNull
+    public Builder setBackgroundColorResource(@ColorRes int resource) {
+      return setBackgroundColor(mResources.getColor(resource));
+    }
+
+    /**
+     * Sets the padding around the text in pixels
+     *
+     * @return the current instance of the Builder
+     */
+    @NonNull
+    public Builder setPadding(int left, int top, int right, int bottom) {
+      mPaddingLeft = left;
+      mPaddingTop = top;
+      mPaddingRight = right;
+      mPaddingBottom = bottom;
+      return this;
+    }
+
+    /**
+     * Sets the horizontal and vertical padding around the text
+     *
+     * @param horizontal
+     *   left and right padding resource id
+     * @param vertical
+     *   top and bottom padding resource id
+     *
+     * @return the current instance of the Builder
+     */
+    @NonNull
+    public Builder setPadding(@DimenRes int horizontal, @DimenRes int vertical) {
+      mPaddingLeft = mPaddingRight = mResources.getDimensionPixelSize(horizontal);
+      mPaddingTop = mPaddingBottom = mResources.getDimensionPixelSize(vertical);
+      return this;
+    }
+
+    /**
+     * Instantiates a TextHeaderStyle with the specified parameters.
+     *
+     * @return a properly initialized TextHeaderStyle instance
+     */
+    @NonNull
+    public TextHeaderStyle build() {
+      return new TextHeaderStyle(this);
+    }
+  }
+}
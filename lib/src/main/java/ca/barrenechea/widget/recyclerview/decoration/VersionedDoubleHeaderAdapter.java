@@ -0,0 +1,35 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+/**
+ * An optional interface for a {@link DoubleHeaderAdapter} which can tell when the content of a
+ * header or a sub-header changed.
+ *
+ * @see VersionedHeaderAdapter
+ */
+public interface VersionedDoubleHeaderAdapter extends VersionedHeaderAdapter {
+  /**
+   * Returns a version of the sub-header content for the item at the given position.
+   *
+   * @param position
+   *   the item position
+   *
+   * @return the sub-header content version
+   */
+  long getSubHeaderVersion(int position);
+}
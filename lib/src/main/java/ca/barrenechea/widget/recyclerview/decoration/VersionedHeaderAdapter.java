@@ -0,0 +1,38 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+/**
+ * An optional interface for a {@link StickyHeaderAdapter} or a {@link DoubleHeaderAdapter} which
+ * can tell when the content of a header changed.
+ * <p>
+ * Cached headers are only rebound after the list's adapter notified a data change or the
+ * decoration was asked to invalidate them. Adapters implementing this interface also get their
+ * headers rebound whenever the reported version changes.
+ */
+public interface VersionedHeaderAdapter {
+  /**
+   * Returns a version of the header content for the item at the given position, e.g. a hash of
+   * the data shown in the header.
+   *
+   * @param position
+   *   the item position
+   *
+   * @return the header content version
+   */
+  long getHeaderVersion(int position);
+}
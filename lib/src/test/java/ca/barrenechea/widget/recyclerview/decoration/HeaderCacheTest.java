@@ -0,0 +1,361 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import android.view.View;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks the open addressing table, the access order and the eviction policies of
+ * {@link HeaderCache}, mostly by fuzzing it against a reference cache built on a
+ * {@link LinkedHashMap}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class HeaderCacheTest {
+  private static final int SEEDS = 20;
+  private static final int OPERATIONS = 5000;
+
+  // ids which collide in the table, are negative or at the ends of the long range
+  private static final long[] SPECIAL_IDS = {
+    0, -1, 1, Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE + 1, Long.MAX_VALUE - 1,
+    1L << 32, (1L << 32) | 1, (2L << 32) | 2, (3L << 32) | 3, -1L << 32, Integer.MIN_VALUE, Integer.MAX_VALUE
+  };
+
+  private HeaderPool pool;
+  private int viewTypes;
+
+  @Before
+  public void setUp() {
+    pool = new HeaderPool(Integer.MAX_VALUE);
+  }
+
+  @Test
+  public void lruPolicyEvictsTheLeastRecentlyUsedHolders() {
+    final HeaderCache cache = newCache(HeaderCache.lruPolicy(2));
+    final RecyclerView.ViewHolder first = newHolder();
+    final RecyclerView.ViewHolder second = newHolder();
+    cache.putEntry(1, first, 1);
+    cache.putEntry(2, second, 2);
+    cache.putEntry(3, newHolder(), 3);
+    cache.endFrame();
+    assertEquals(3, cache.size());
+
+    cache.get(1);
+    cache.endFrame();
+    assertEquals(2, cache.size());
+    assertEquals(1, cache.getEvictionCount());
+    assertEquals(HeaderCache.NO_ENTRY, cache.peekEntry(2));
+    assertSame(first, cache.get(1));
+    assertSame(second, pool.get(2));
+  }
+
+  @Test
+  public void visibleWindowPolicyKeepsTheOnScreenHoldersAndExtraOnes() {
+    final HeaderCache cache = newCache(HeaderCache.visibleWindowPolicy(1));
+    for (int id = 1; id <= 4; id++) {
+      cache.putEntry(id, newHolder(), id);
+    }
+    cache.endFrame();
+    assertEquals(4, cache.size());
+
+    cache.get(4);
+    cache.endFrame();
+    assertEquals(2, cache.size());
+    assertEquals(2, cache.getEvictionCount());
+    assertEquals(HeaderCache.NO_ENTRY, cache.peekEntry(1));
+    assertEquals(HeaderCache.NO_ENTRY, cache.peekEntry(2));
+    assertEquals(2, pool.size());
+  }
+
+  @Test
+  public void onScreenHoldersAreNeverEvicted() {
+    final HeaderCache cache = newCache(HeaderCache.lruPolicy(0));
+    for (int id = 0; id < 40; id++) {
+      cache.putEntry(id, newHolder(), id);
+    }
+    cache.endFrame();
+    assertEquals(40, cache.size());
+    assertEquals(0, cache.getEvictionCount());
+
+    cache.endFrame();
+    assertEquals(0, cache.size());
+    assertEquals(40, cache.getEvictionCount());
+  }
+
+  @Test
+  public void unusedEntriesAreNotOnScreen() {
+    final HeaderCache cache = newCache(HeaderCache.visibleWindowPolicy(0));
+    final RecyclerView.ViewHolder prefetched = newHolder();
+    cache.putUnusedEntry(1, prefetched, 1);
+    cache.putEntry(2, newHolder(), 2);
+    cache.endFrame();
+
+    assertEquals(1, cache.size());
+    assertEquals(HeaderCache.NO_ENTRY, cache.peekEntry(1));
+    assertSame(prefetched, pool.get(1));
+  }
+
+  @Test
+  public void trimDropsHoldersWithoutPoolingThem() {
+    final HeaderCache cache = newCache(HeaderCache.lruPolicy(10));
+    cache.putEntry(1, newHolder(), 1);
+    cache.putEntry(2, newHolder(), 2);
+    cache.endFrame();
+    cache.get(2);
+    cache.endFrame();
+    cache.putEntry(3, newHolder(), 3);
+
+    cache.trim();
+    assertEquals(2, cache.size());
+    assertEquals(HeaderCache.NO_ENTRY, cache.peekEntry(1));
+    assertEquals(0, cache.getEvictionCount());
+    assertEquals(0, pool.size());
+  }
+
+  @Test
+  public void puttingAnIdAgainReplacesItsHolder() {
+    final HeaderCache cache = newCache(HeaderCache.lruPolicy(10));
+    cache.putEntry(1, newHolder(), 1);
+    final RecyclerView.ViewHolder holder = newHolder();
+    cache.putEntry(1, holder, 2);
+
+    assertEquals(1, cache.size());
+    assertSame(holder, cache.get(1));
+    assertEquals(2, cache.getViewType(cache.peekEntry(1)));
+    assertEquals(0, pool.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void lruPolicyRejectsANegativeCapacity() {
+    HeaderCache.lruPolicy(-1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void visibleWindowPolicyRejectsANegativeExtra() {
+    HeaderCache.visibleWindowPolicy(-1);
+  }
+
+  @Test
+  public void matchesTheReferenceCache() {
+    for (int seed = 0; seed < SEEDS; seed++) {
+      fuzz(seed);
+    }
+  }
+
+  private void fuzz(long seed) {
+    final Random random = new Random(seed);
+    final boolean lru = random.nextBoolean();
+    final int capacity = random.nextInt(lru ? 48 : 16);
+    final HeaderCache.EvictionPolicy policy = lru ? HeaderCache.lruPolicy(capacity) : HeaderCache.visibleWindowPolicy(capacity);
+    final HeaderCache cache = newCache(policy);
+    final ReferenceCache reference = new ReferenceCache(policy);
+
+    // enough ids to grow and shrink the table, and to probe past removed entries
+    final long[] ids = new long[SPECIAL_IDS.length + 100];
+    System.arraycopy(SPECIAL_IDS, 0, ids, 0, SPECIAL_IDS.length);
+    for (int i = SPECIAL_IDS.length; i < ids.length; i++) {
+      ids[i] = random.nextInt(4) == 0 ? random.nextLong() : random.nextInt(200) - 100;
+    }
+
+    for (int operation = 0; operation < OPERATIONS; operation++) {
+      final String step = "seed " + seed + ", operation " + operation;
+      final long id = ids[random.nextInt(ids.length)];
+      final int choice = random.nextInt(100);
+
+      if (choice < 35) {
+        final RecyclerView.ViewHolder expected = reference.get(id);
+        assertSame(step + ": get " + id, expected, cache.get(id));
+      } else if (choice < 60) {
+        final RecyclerView.ViewHolder holder = newHolder();
+        final int viewType = viewTypes;
+        reference.put(id, holder, viewType, true);
+        cache.putEntry(id, holder, viewType);
+      } else if (choice < 70) {
+        final RecyclerView.ViewHolder holder = newHolder();
+        final int viewType = viewTypes;
+        reference.put(id, holder, viewType, false);
+        cache.putUnusedEntry(id, holder, viewType);
+      } else if (choice < 90) {
+        final List<Entry> evicted = reference.endFrame();
+        cache.endFrame();
+        for (Entry entry : evicted) {
+          assertSame(step + ": evicted holder", entry.holder, pool.get(entry.viewType));
+        }
+        assertEquals(step + ": pooled holders", 0, pool.size());
+      } else if (choice < 97) {
+        reference.trim();
+        cache.trim();
+      } else if (choice < 98) {
+        reference.clear();
+        cache.clear();
+      } else {
+        for (long other : ids) {
+          checkEntry(step, cache, reference, other);
+        }
+      }
+
+      assertEquals(step + ": size", reference.entries.size(), cache.size());
+      assertEquals(step + ": evictions", reference.evictionCount, cache.getEvictionCount());
+      checkEntry(step, cache, reference, id);
+    }
+
+    for (long id : ids) {
+      checkEntry("seed " + seed, cache, reference, id);
+    }
+  }
+
+  private static void checkEntry(String step, HeaderCache cache, ReferenceCache reference, long id) {
+    final Entry expected = reference.peek(id);
+    final int entry = cache.peekEntry(id);
+    if (expected == null) {
+      assertEquals(step + ": entry of " + id, HeaderCache.NO_ENTRY, entry);
+    } else {
+      assertEquals(step + ": id of " + id, id, cache.getHeaderId(entry));
+      assertSame(step + ": holder of " + id, expected.holder, cache.getHolder(entry));
+      assertEquals(step + ": view type of " + id, expected.viewType, cache.getViewType(entry));
+    }
+  }
+
+  private HeaderCache newCache(HeaderCache.EvictionPolicy policy) {
+    final HeaderCache cache = new HeaderCache(policy);
+    cache.setPool(pool);
+    return cache;
+  }
+
+  /**
+   * Returns a new holder, and gives it a view type of its own so it can be told apart in the pool.
+   */
+  private RecyclerView.ViewHolder newHolder() {
+    viewTypes++;
+    return new RecyclerView.ViewHolder(new View(RuntimeEnvironment.application)) {
+    };
+  }
+
+  private static final class Entry {
+    RecyclerView.ViewHolder holder;
+    int viewType;
+    int frame;
+  }
+
+  /**
+   * The expected behavior of a {@link HeaderCache}, kept in a map in access order.
+   */
+  private static final class ReferenceCache {
+    final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    final HeaderCache.EvictionPolicy policy;
+    int frame;
+    int evictionCount;
+
+    ReferenceCache(HeaderCache.EvictionPolicy policy) {
+      this.policy = policy;
+    }
+
+    RecyclerView.ViewHolder get(long id) {
+      final Entry entry = entries.get(id);
+      if (entry == null) {
+        return null;
+      }
+      entry.frame = frame;
+      return entry.holder;
+    }
+
+    /**
+     * Returns the entry of the given id without changing the access order.
+     */
+    Entry peek(long id) {
+      for (Map.Entry<Long, Entry> entry : entries.entrySet()) {
+        if (entry.getKey() == id) {
+          return entry.getValue();
+        }
+      }
+      return null;
+    }
+
+    void put(long id, RecyclerView.ViewHolder holder, int viewType, boolean used) {
+      Entry entry = entries.get(id);
+      if (entry == null) {
+        entry = new Entry();
+        entry.frame = frame - 1;
+        entries.put(id, entry);
+      }
+      entry.holder = holder;
+      entry.viewType = viewType;
+      if (used) {
+        entry.frame = frame;
+      }
+    }
+
+    List<Entry> endFrame() {
+      int visibleCount = 0;
+      for (Entry entry : entries.values()) {
+        if (entry.frame == frame) {
+          visibleCount++;
+        }
+      }
+
+      final int capacity = policy.getCapacity(visibleCount);
+      final List<Entry> evicted = new ArrayList<>();
+      final Iterator<Entry> iterator = entries.values().iterator();
+      while (entries.size() > capacity) {
+        final Entry entry = iterator.next();
+        if (entry.frame == frame) {
+          break;
+        }
+        iterator.remove();
+        evicted.add(entry);
+        evictionCount++;
+      }
+
+      frame++;
+      return evicted;
+    }
+
+    void trim() {
+      final Iterator<Entry> iterator = entries.values().iterator();
+      while (iterator.hasNext()) {
+        final Entry entry = iterator.next();
+        if (entry.frame == frame || entry.frame == frame - 1) {
+          break;
+        }
+        iterator.remove();
+      }
+    }
+
+    void clear() {
+      entries.clear();
+    }
+  }
+}
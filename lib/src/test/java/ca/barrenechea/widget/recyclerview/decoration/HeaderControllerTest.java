@@ -0,0 +1,160 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks how {@link HeaderController} creates header view holders ahead of time or on an
+ * executor.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class HeaderControllerTest {
+  private final List<Runnable> tasks = new ArrayList<>();
+  private final HeaderMetrics metrics = new HeaderMetrics();
+  private RecyclerView parent;
+  private HeaderController controller;
+
+  @Before
+  public void setUp() {
+    parent = new RecyclerView(RuntimeEnvironment.application);
+    controller = new HeaderController(new HeaderCache(), HeaderController.LEVEL_HEADER) {
+      @NonNull
+      @Override
+      RecyclerView.ViewHolder createHolder(@NonNull ViewGroup parent, int viewType) {
+        final View header = new View(parent.getContext());
+        header.setLayoutParams(new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+        return new RecyclerView.ViewHolder(header) {
+        };
+      }
+
+      @Override
+      void bindHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+      }
+    };
+    controller.setMetrics(metrics);
+    controller.setExecutor(new Executor() {
+      @Override
+      public void execute(@NonNull Runnable task) {
+        tasks.add(task);
+      }
+    });
+  }
+
+  @Test
+  public void pendingHeaderIsMissedOnce() {
+    for (int frame = 0; frame < 3; frame++) {
+      assertNull(controller.getHeader(parent, 1, 0, false));
+      controller.endFrame();
+    }
+    assertEquals(1, tasks.size());
+    assertEquals(1, metrics.getCacheMissCount());
+
+    runTasks();
+    assertNotNull(controller.getHeader(parent, 1, 0, false));
+    assertEquals(1, metrics.getCacheMissCount());
+    assertEquals(1, metrics.getCacheHitCount());
+    assertEquals(1, metrics.getCreateCount());
+  }
+
+  @Test
+  public void headerCreatedAfterClearIsDropped() {
+    assertNull(controller.getHeader(parent, 1, 0, false));
+    controller.clear();
+    runTasks();
+    assertEquals(0, controller.getCache().size());
+    assertEquals(0, controller.getPool().size());
+
+    // the header is requested again rather than waited for
+    assertNull(controller.getHeader(parent, 1, 0, false));
+    assertEquals(1, tasks.size());
+  }
+
+  @Test
+  public void headerLosingTheRaceIsPooled() {
+    assertNull(controller.getHeader(parent, 1, 0, false));
+    final RecyclerView.ViewHolder pooled = new RecyclerView.ViewHolder(new View(RuntimeEnvironment.application)) {
+    };
+    pooled.itemView.setLayoutParams(new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+    controller.getPool().put(pooled, HeaderController.DEFAULT_VIEW_TYPE);
+    controller.prefetch(parent, 1, 0, Long.MAX_VALUE);
+
+    runTasks();
+    assertSame(pooled, controller.getHeader(parent, 1, 0, false));
+    assertEquals(1, controller.getPool().size());
+  }
+
+  @Test
+  public void prewarmedHeadersAreNotOnScreen() {
+    controller.setExecutor(null);
+    controller.setCache(new HeaderCache(HeaderCache.visibleWindowPolicy(1)));
+    controller.prewarm(parent, 2, 10);
+    controller.prewarm(parent, 3, 20);
+    assertEquals(0, metrics.getCacheHitCount());
+    assertEquals(0, metrics.getCacheMissCount());
+    assertEquals(2, metrics.getCreateCount());
+
+    assertNotNull(controller.getHeader(parent, 1, 0, false));
+    controller.endFrame();
+    assertEquals(2, controller.getCache().size());
+    assertEquals(HeaderCache.NO_ENTRY, controller.getCache().peekEntry(2));
+  }
+
+  @Test
+  public void restoredHeightsAreKeptUntilTheListHasAWidth() {
+    final HeaderHeights heights = new HeaderHeights();
+    heights.setKey(720, 0);
+    heights.put(1, 50);
+    controller.setHeights(heights);
+
+    // the list is not laid out yet
+    assertEquals(50, controller.getLayoutHeight(parent, 1, 0));
+    assertEquals(0, metrics.getCacheMissCount());
+    assertEquals(50, heights.get(1));
+  }
+
+  private void runTasks() {
+    final List<Runnable> tasks = new ArrayList<>(this.tasks);
+    this.tasks.clear();
+    for (Runnable task : tasks) {
+      task.run();
+    }
+    ShadowLooper.idleMainLooper();
+  }
+}
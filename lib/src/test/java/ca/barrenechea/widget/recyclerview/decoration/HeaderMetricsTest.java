@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the metrics a decoration collects while a list scrolls.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class HeaderMetricsTest {
+  private static final int WIDTH = 720;
+  private static final int HEIGHT = 1280;
+  private static final int FRAMES = 50;
+
+  private final HeaderMetrics metrics = new HeaderMetrics();
+  private StickyHeaderDecoration decoration;
+  private RecyclerView list;
+  private Canvas canvas;
+
+  @Before
+  public void setUp() {
+    final Context context = RuntimeEnvironment.application;
+    final SyntheticAdapter adapter = new SyntheticAdapter(1000, 5);
+    list = new RecyclerView(context);
+    list.setLayoutManager(new LinearLayoutManager(context));
+    list.setAdapter(adapter);
+    decoration = new StickyHeaderDecoration(adapter);
+    decoration.setMetrics(metrics);
+    list.addItemDecoration(decoration);
+    canvas = new Canvas(Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+  }
+
+  @Test
+  public void headersNotPrefetchedInTimeAreMisses() {
+    // the list is never attached, so it has no frame time to prefetch in and prefetching starves
+    decoration.setPrefetchSectionCount(2);
+    scroll();
+
+    assertEquals(0, metrics.getPrefetchCount());
+    assertTrue(metrics.getCacheMissCount() > 0);
+    assertEquals(metrics.getCacheMissCount(), metrics.getPrefetchMissCount());
+  }
+
+  @Test
+  public void headersAreNotMissesWithoutPrefetching() {
+    scroll();
+
+    assertTrue(metrics.getCacheMissCount() > 0);
+    assertEquals(0, metrics.getPrefetchMissCount());
+  }
+
+  @Test
+  public void frameListenerIsCalledOncePerFrame() {
+    final int[] frames = new int[1];
+    metrics.setFrameListener(new HeaderMetrics.FrameListener() {
+      @Override
+      public void onFrame(@NonNull HeaderMetrics metrics) {
+        frames[0]++;
+        assertEquals(frames[0], metrics.getDrawCount());
+      }
+    });
+    scroll();
+
+    assertEquals(FRAMES + 1, frames[0]);
+  }
+
+  private void scroll() {
+    list.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY), View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+    list.layout(0, 0, WIDTH, HEIGHT);
+    list.draw(canvas);
+    for (int frame = 0; frame < FRAMES; frame++) {
+      list.scrollBy(0, SyntheticAdapter.ITEM_HEIGHT * 3 / 2);
+      list.draw(canvas);
+    }
+  }
+}
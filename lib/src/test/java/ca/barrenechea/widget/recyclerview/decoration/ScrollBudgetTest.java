@@ -0,0 +1,216 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.view.View;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.ParameterizedRobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Scrolls a real list through each decoration, over synthetic adapters of various sizes and
+ * section sizes, and fails when a frame asks the adapter for more header ids, or creates, binds or
+ * measures more headers than its budget allows. The budgets only depend on how far a frame
+ * scrolls, never on the number of items or on the scroll position.
+ */
+@RunWith(ParameterizedRobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ScrollBudgetTest {
+  private static final int WIDTH = 720;
+  private static final int HEIGHT = 1280;
+  private static final int SCROLL_STEP = SyntheticAdapter.ITEM_HEIGHT * 3 / 2;
+  // frames scrolled before the budgets apply, so the header cache and pool fill up
+  private static final int WARM_UP_FRAMES = 40;
+  private static final int FRAMES = 200;
+
+  // per frame, for each of the header and sub-header levels
+  private static final int ID_CALL_BUDGET = 32;
+  private static final int CREATE_BUDGET = 3;
+  private static final int BIND_BUDGET = 4;
+  private static final int MEASURE_BUDGET = 4;
+  // to lay the list out at a position far from the ones indexed so far
+  private static final int JUMP_ID_CALL_BUDGET = 256;
+  // onDrawOver calls per allocation measure, the least allocating of the rounds must not allocate
+  private static final int ALLOCATION_CALLS = 100;
+  private static final int ALLOCATION_ROUNDS = 5;
+
+  @ParameterizedRobolectricTestRunner.Parameters(name = "{0}, {1} items, sections of {2}")
+  public static Collection<Object[]> parameters() {
+    final List<Object[]> parameters = new ArrayList<>();
+    for (String decoration : new String[] {"sticky", "double"}) {
+      for (int itemCount : new int[] {1000, 100000, 1000000}) {
+        for (int sectionSize : new int[] {1, 10, 100}) {
+          parameters.add(new Object[] {decoration, itemCount, sectionSize});
+        }
+      }
+    }
+    return parameters;
+  }
+
+  private final boolean isDouble;
+  private final int itemCount;
+  private final int sectionSize;
+
+  private SyntheticAdapter adapter;
+  private RecyclerView list;
+  private RecyclerView.ItemDecoration decoration;
+  private Canvas canvas;
+
+  public ScrollBudgetTest(String decoration, int itemCount, int sectionSize) {
+    this.isDouble = "double".equals(decoration);
+    this.itemCount = itemCount;
+    this.sectionSize = sectionSize;
+  }
+
+  @Before
+  public void setUp() {
+    final Context context = RuntimeEnvironment.application;
+    adapter = new SyntheticAdapter(itemCount, sectionSize);
+    list = new RecyclerView(context);
+    list.setLayoutManager(new LinearLayoutManager(context));
+    list.setAdapter(adapter);
+    decoration = isDouble ? new DoubleHeaderDecoration(adapter) : new StickyHeaderDecoration(adapter);
+    list.addItemDecoration(decoration);
+    canvas = new Canvas(Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888));
+
+    layout();
+    list.draw(canvas);
+  }
+
+  @Test
+  public void scrollingStaysWithinFrameBudgets() {
+    scroll();
+  }
+
+  @Test
+  public void jumpingFarIndexesAroundTheTarget() {
+    adapter.resetCounts();
+    list.scrollToPosition(itemCount / 2);
+    layout();
+    list.draw(canvas);
+
+    checkBudget("jump", "header id calls", adapter.headerIdCalls, JUMP_ID_CALL_BUDGET);
+    if (isDouble) {
+      checkBudget("jump", "sub-header id calls", adapter.subHeaderIdCalls, JUMP_ID_CALL_BUDGET);
+    }
+
+    scroll();
+  }
+
+  @Test
+  public void drawingOverDoesNotAllocate() {
+    final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+    final long thread = Thread.currentThread().getId();
+
+    scroll();
+    final Canvas canvas = new NoOpCanvas();
+    final RecyclerView.State state = new RecyclerView.State();
+    for (int i = 0; i < ALLOCATION_CALLS; i++) {
+      decoration.onDrawOver(canvas, list, state);
+    }
+
+    long allocated = Long.MAX_VALUE;
+    for (int round = 0; round < ALLOCATION_ROUNDS; round++) {
+      final long before = threads.getThreadAllocatedBytes(thread);
+      final long start = threads.getThreadAllocatedBytes(thread);
+      for (int i = 0; i < ALLOCATION_CALLS; i++) {
+        decoration.onDrawOver(canvas, list, state);
+      }
+      final long end = threads.getThreadAllocatedBytes(thread);
+      // discount what reading the counter allocates
+      allocated = Math.min(allocated, end - start - (start - before));
+    }
+    assertEquals("bytes allocated by " + ALLOCATION_CALLS + " onDrawOver calls", 0, allocated);
+  }
+
+  private void layout() {
+    list.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY), View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+    list.layout(0, 0, WIDTH, HEIGHT);
+  }
+
+  /**
+   * Scrolls and draws the list frame by frame, checking the budgets of each frame once warmed up.
+   */
+  private void scroll() {
+    for (int frame = 0; frame < FRAMES; frame++) {
+      adapter.resetCounts();
+      list.scrollBy(0, SCROLL_STEP);
+      list.draw(canvas);
+
+      if (frame >= WARM_UP_FRAMES) {
+        final String name = "frame " + frame;
+        checkBudget(name, "header id calls", adapter.headerIdCalls, ID_CALL_BUDGET);
+        checkBudget(name, "header creations", adapter.headerCreates, CREATE_BUDGET);
+        checkBudget(name, "header binds", adapter.headerBinds, BIND_BUDGET);
+        checkBudget(name, "header measures", adapter.headerMeasures, MEASURE_BUDGET);
+        if (isDouble) {
+          checkBudget(name, "sub-header id calls", adapter.subHeaderIdCalls, ID_CALL_BUDGET);
+          checkBudget(name, "sub-header creations", adapter.subHeaderCreates, CREATE_BUDGET);
+          checkBudget(name, "sub-header binds", adapter.subHeaderBinds, BIND_BUDGET);
+          checkBudget(name, "sub-header measures", adapter.subHeaderMeasures, MEASURE_BUDGET);
+        }
+      }
+    }
+  }
+
+  private static void checkBudget(String frame, String name, int count, int budget) {
+    if (count > budget) {
+      fail(String.format(Locale.US, "%s: %d %s exceed the budget of %d", frame, count, name, budget));
+    }
+  }
+
+  /**
+   * A canvas whose transformations do nothing, so only the allocations of the decorations count.
+   */
+  private static final class NoOpCanvas extends Canvas {
+    @Override
+    public int save() {
+      return 1;
+    }
+
+    @Override
+    public void translate(float dx, float dy) {
+    }
+
+    @Override
+    public void restore() {
+    }
+  }
+}
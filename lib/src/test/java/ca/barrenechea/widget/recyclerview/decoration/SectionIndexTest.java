@@ -0,0 +1,137 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the sections found by {@link SectionIndex} against the ids of random lists, whose real
+ * sections are consecutive and whose positions without a header are scattered through the list.
+ */
+public class SectionIndexTest {
+  private static final long NO_ID = StickyHeaderDecoration.NO_HEADER_ID;
+  private static final int LISTS = 2000;
+  private static final int LOOKUPS = 20;
+
+  @Test
+  public void findsSectionsAroundRunsWithoutHeaders() {
+    final long[] ids = {NO_ID, NO_ID, 1, 1, 1, NO_ID, 2, 2, NO_ID, NO_ID, NO_ID, 3, NO_ID, 4, 4};
+    final SectionIndex index = new SectionIndex(new ArrayIdSource(ids));
+    index.setItemCount(ids.length);
+
+    // a deep lookup first, so the sections around it are found by galloping
+    assertEquals(NO_ID, index.getId(9));
+    assertEquals(8, index.getSectionStart(index.getSection(9)));
+    assertEquals(11, index.getNextSectionStart(9));
+    assertEquals(NO_ID, index.getId(0));
+    assertEquals(2, index.getNextSectionStart(0));
+    assertEquals(2L, index.getId(7));
+    assertEquals(6, index.getSectionStart(index.getSection(7)));
+    assertEquals(NO_ID, index.getId(12));
+    assertEquals(12, index.getSectionStart(index.getSection(12)));
+    assertEquals(13, index.getNextSectionStart(12));
+  }
+
+  @Test
+  public void matchesTheIdsOfRandomListsWithScatteredRunsWithoutHeaders() {
+    final Random random = new Random(0);
+    for (int list = 0; list < LISTS; list++) {
+      final long[] ids = randomIds(random);
+      final boolean batched = random.nextBoolean();
+      final SectionIndex index = new SectionIndex(batched ? new ArrayRangeIdSource(ids) : new ArrayIdSource(ids));
+      index.setItemCount(ids.length);
+
+      for (int lookup = 0; lookup < LOOKUPS; lookup++) {
+        final int position = lookup == 0 ? ids.length - 1 - random.nextInt(Math.min(ids.length, 100)) : random.nextInt(ids.length);
+        final String step = "list " + list + (batched ? " in batches" : "") + ", position " + position;
+        assertEquals(step + ": id", ids[position], index.getId(position));
+        assertEquals(step + ": section start", sectionStart(ids, position), index.getSectionStart(index.getSection(position)));
+        assertEquals(step + ": next section start", nextSectionStart(ids, position), index.getNextSectionStart(position));
+        assertEquals(step + ": section id", ids[position], index.getSectionId(index.getSection(position)));
+      }
+    }
+  }
+
+  /**
+   * Returns the ids of a list of consecutive sections, with runs of positions without a header
+   * between them.
+   */
+  private static long[] randomIds(Random random) {
+    final int itemCount = 1 + random.nextInt(random.nextBoolean() ? 100 : 5000);
+    final long[] ids = new long[itemCount];
+    long id = random.nextInt(10);
+    int position = 0;
+    while (position < itemCount) {
+      final boolean header = random.nextInt(3) != 0;
+      final int length = Math.min(itemCount - position, 1 + random.nextInt(random.nextBoolean() ? 4 : 400));
+      for (int i = 0; i < length; i++) {
+        ids[position + i] = header ? id : NO_ID;
+      }
+      position += length;
+      if (header) {
+        id += 1 + random.nextInt(3);
+      }
+    }
+    return ids;
+  }
+
+  private static int sectionStart(long[] ids, int position) {
+    int start = position;
+    while (start > 0 && ids[start - 1] == ids[position]) {
+      start--;
+    }
+    return start;
+  }
+
+  private static int nextSectionStart(long[] ids, int position) {
+    int end = position + 1;
+    while (end < ids.length && ids[end] == ids[position]) {
+      end++;
+    }
+    return end;
+  }
+
+  private static class ArrayIdSource implements SectionIndex.IdSource {
+    final long[] ids;
+
+    ArrayIdSource(long[] ids) {
+      this.ids = ids;
+    }
+
+    @Override
+    public long getId(int position) {
+      return ids[position];
+    }
+  }
+
+  private static final class ArrayRangeIdSource extends ArrayIdSource implements SectionIndex.RangeIdSource {
+    ArrayRangeIdSource(long[] ids) {
+      super(ids);
+    }
+
+    @Override
+    public void getIds(int start, int count, @NonNull long[] ids) {
+      System.arraycopy(this.ids, start, ids, 0, count);
+    }
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2014 Eduardo Barrenechea
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ca.barrenechea.widget.recyclerview.decoration;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * A list of blank items of a fixed height, whose header sections hold a fixed number of items and
+ * sub-header sections a quarter of them. Counts the header id calls, and the header creations,
+ * binds and measures the decorations cause.
+ */
+class SyntheticAdapter extends RecyclerView.Adapter<SyntheticAdapter.Holder>
+  implements StickyHeaderAdapter<SyntheticAdapter.Holder>, DoubleHeaderAdapter<SyntheticAdapter.Holder, SyntheticAdapter.Holder> {
+  static final int ITEM_HEIGHT = 60;
+  static final int HEADER_HEIGHT = 40;
+
+  private final int itemCount;
+  private final int sectionSize;
+  private final int subSectionSize;
+
+  int headerIdCalls;
+  int subHeaderIdCalls;
+  int headerCreates;
+  int subHeaderCreates;
+  int headerBinds;
+  int subHeaderBinds;
+  int headerMeasures;
+  int subHeaderMeasures;
+
+  SyntheticAdapter(int itemCount, int sectionSize) {
+    this.itemCount = itemCount;
+    this.sectionSize = sectionSize;
+    this.subSectionSize = Math.max(1, sectionSize / 4);
+  }
+
+  void resetCounts() {
+    headerIdCalls = 0;
+    subHeaderIdCalls = 0;
+    headerCreates = 0;
+    subHeaderCreates = 0;
+    headerBinds = 0;
+    subHeaderBinds = 0;
+    headerMeasures = 0;
+    subHeaderMeasures = 0;
+  }
+
+  @Override
+  public int getItemCount() {
+    return itemCount;
+  }
+
+  @NonNull
+  @Override
+  public Holder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+    final View item = new View(parent.getContext());
+    item.setLayoutParams(new RecyclerView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ITEM_HEIGHT));
+    return new Holder(item);
+  }
+
+  @Override
+  public void onBindViewHolder(@NonNull Holder holder, int position) {
+  }
+
+  @Override
+  public long getHeaderId(int position) {
+    headerIdCalls++;
+    return position / sectionSize;
+  }
+
+  @Override
+  public long getSubHeaderId(int position) {
+    subHeaderIdCalls++;
+    return position / subSectionSize;
+  }
+
+  @NonNull
+  @Override
+  public Holder onCreateHeaderViewHolder(@NonNull ViewGroup parent) {
+    return onCreateHeaderHolder(parent);
+  }
+
+  @Override
+  public void onBindHeaderViewHolder(@NonNull Holder viewHolder, int position) {
+    onBindHeaderHolder(viewHolder, position);
+  }
+
+  @NonNull
+  @Override
+  public Holder onCreateHeaderHolder(@NonNull ViewGroup parent) {
+    headerCreates++;
+    return new Holder(new HeaderView(parent.getContext(), false));
+  }
+
+  @NonNull
+  @Override
+  public Holder onCreateSubHeaderHolder(@NonNull ViewGroup parent) {
+    subHeaderCreates++;
+    return new Holder(new HeaderView(parent.getContext(), true));
+  }
+
+  @Override
+  public void onBindHeaderHolder(@NonNull Holder viewHolder, int position) {
+    headerBinds++;
+  }
+
+  @Override
+  public void onBindSubHeaderHolder(@NonNull Holder viewHolder, int position) {
+    subHeaderBinds++;
+  }
+
+  static final class Holder extends RecyclerView.ViewHolder {
+    Holder(@NonNull View itemView) {
+      super(itemView);
+    }
+  }
+
+  private final class HeaderView extends View {
+    private final boolean subHeader;
+
+    HeaderView(@NonNull Context context, boolean subHeader) {
+      super(context);
+      this.subHeader = subHeader;
+      setLayoutParams(new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+      if (subHeader) {
+        subHeaderMeasures++;
+      } else {
+        headerMeasures++;
+      }
+      setMeasuredDimension(MeasureSpec.getSize(widthMeasureSpec), HEADER_HEIGHT);
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+      // only the work of the decorations is measured, not the rendering of the headers
+    }
+  }
+}
@@ -52,6 +52,7 @@ public void onPositionChanged(long headerId, int x, int y) {
     list.setAdapter(adapter);
     list.addItemDecoration(decor, 1);
     list.addOnItemTouchListener(this);
+    decor.prewarmHeaders(list, 8);
   }
 
   @Override